@@ -14,6 +14,7 @@ plugins {
     id("com.diffplug.spotless") version "6.12.0"
     id("io.github.sgtsilvio.gradle.maven-central-publishing") version "0.4.1"
     id("io.github.sgtsilvio.gradle.metadata") version "0.6.0"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 spotless {
@@ -22,6 +23,12 @@ spotless {
     }
 }
 
+jmh {
+    jmhVersion.set("1.37")
+    includeTests.set(false)
+    profilers.add("gc")
+}
+
 val projectUrl = "https://github.com/sizovs/pipelinr"
 
 publishing {
@@ -70,6 +77,9 @@ tasks {
             html.required.set(false)
         }
     }
+    compileJava {
+        options.compilerArgs.add("-Xlint:overloads")
+    }
     test {
         useJUnitPlatform()
     }
@@ -91,6 +101,122 @@ java {
     targetCompatibility = JavaVersion.VERSION_1_8
 }
 
+// Flow classes need Java 9 and virtual thread strategies need Java 21. They are shipped in a
+// multi-release JAR (META-INF/versions/9 and META-INF/versions/21), so Java 8 users keep the
+// baseline classes.
+val java9: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+}
+
+val java9Test: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output + java9.output
+    runtimeClasspath += sourceSets.main.get().output + java9.output
+}
+
+val java21: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+}
+
+val java21Test: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output + java21.output
+    runtimeClasspath += sourceSets.main.get().output + java21.output
+}
+
+configurations {
+    named("java9TestImplementation") { extendsFrom(testImplementation.get()) }
+    named("java9TestRuntimeOnly") { extendsFrom(testRuntimeOnly.get()) }
+    named("java21TestImplementation") { extendsFrom(testImplementation.get()) }
+    named("java21TestRuntimeOnly") { extendsFrom(testRuntimeOnly.get()) }
+}
+
+val java21Toolchain: JavaToolchainSpec.() -> Unit = { languageVersion.set(JavaLanguageVersion.of(21)) }
+
+// A JDK 21 is found among installed JDKs, or given with -Porg.gradle.java.installations.paths=...
+// It compiles Java 9 classes too, with --release 9. Without one, Java 9 and Java 21 classes are
+// skipped, so the build still works on a Java 8+ machine, but publishing fails rather than
+// releasing a JAR without them.
+val java21Available = runCatching { javaToolchains.launcherFor(java21Toolchain).get() }.isSuccess
+if (!java21Available) {
+    logger.warn("JDK 21 not found: Java 9 and Java 21 classes are neither compiled nor tested.")
+}
+
+tasks {
+    named<JavaCompile>(java9.compileJavaTaskName) {
+        javaCompiler.set(project.javaToolchains.compilerFor(java21Toolchain))
+        options.release.set(9)
+        onlyIf { java21Available }
+    }
+    named<JavaCompile>(java9Test.compileJavaTaskName) {
+        javaCompiler.set(project.javaToolchains.compilerFor(java21Toolchain))
+        options.release.set(9)
+        onlyIf { java21Available }
+    }
+    named<JavaCompile>(java21.compileJavaTaskName) {
+        javaCompiler.set(project.javaToolchains.compilerFor(java21Toolchain))
+        options.release.set(21)
+        onlyIf { java21Available }
+    }
+    named<JavaCompile>(java21Test.compileJavaTaskName) {
+        javaCompiler.set(project.javaToolchains.compilerFor(java21Toolchain))
+        options.release.set(21)
+        onlyIf { java21Available }
+    }
+    val java9Tests by registering(Test::class) {
+        description = "Runs tests of Java 9 classes."
+        group = "verification"
+        testClassesDirs = java9Test.output.classesDirs
+        classpath = java9Test.runtimeClasspath
+        if (java21Available) {
+            javaLauncher.set(project.javaToolchains.launcherFor(java21Toolchain))
+        }
+        onlyIf { java21Available }
+        useJUnitPlatform()
+    }
+    val java21Tests by registering(Test::class) {
+        description = "Runs tests of Java 21 classes."
+        group = "verification"
+        testClassesDirs = java21Test.output.classesDirs
+        classpath = java21Test.runtimeClasspath
+        if (java21Available) {
+            javaLauncher.set(project.javaToolchains.launcherFor(java21Toolchain))
+        }
+        onlyIf { java21Available }
+        useJUnitPlatform()
+    }
+    check {
+        dependsOn(java9Tests, java21Tests)
+    }
+    jar {
+        into("META-INF") {
+            from("LICENSE", "NOTICE")
+        }
+        into("META-INF/versions/9") {
+            from(java9.output)
+        }
+        into("META-INF/versions/21") {
+            from(java21.output)
+        }
+        manifest {
+            attributes("Multi-Release" to "true")
+        }
+    }
+    named<Jar>("sourcesJar") {
+        from(java9.allSource, java21.allSource)
+    }
+    javadoc {
+        if (java21Available) {
+            javadocTool.set(project.javaToolchains.javadocToolFor(java21Toolchain))
+            source(java9.allJava, java21.allJava)
+            classpath += java9.compileClasspath + java21.compileClasspath
+        }
+    }
+    matching { it.name.startsWith("publish") }.configureEach {
+        doFirst {
+            check(java21Available) { "JDK 21 is required to publish Java 9 and Java 21 classes" }
+        }
+    }
+}
+
 dependencies {
     testImplementation("org.junit.jupiter:junit-jupiter:5.4.0")
     testImplementation("org.junit.platform:junit-platform-runner:1.4.0")
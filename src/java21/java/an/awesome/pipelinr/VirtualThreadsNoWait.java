@@ -0,0 +1,18 @@
+package an.awesome.pipelinr;
+
+import java.util.List;
+
+/**
+ * Run each notification handler in its own virtual thread.
+ *
+ * <p>Returns immediately and does not wait for any handlers to finish.
+ *
+ * <p>Note that you cannot capture any exceptions.
+ */
+public class VirtualThreadsNoWait implements NotificationHandlingStrategy {
+
+  @Override
+  public void handle(List<Runnable> runnableNotifications) {
+    runnableNotifications.forEach(Thread::startVirtualThread);
+  }
+}
@@ -0,0 +1,55 @@
+package an.awesome.pipelinr;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Run each notification handler in its own virtual thread.
+ *
+ * <p>Returns when all threads (handlers) are finished. If the deadline of the notification passes
+ * first, the remaining threads are interrupted and awaited, and DeadlineExceededException is
+ * thrown.
+ *
+ * <p>In case of any exception(s), they are captured in an AggregateException.
+ */
+public class VirtualThreadsWhenAll implements NotificationHandlingStrategy {
+
+  @Override
+  public void handle(List<Runnable> runnableNotifications) {
+    Collection<Throwable> exceptions = new CopyOnWriteArrayList<>();
+    CountDownLatch allFinished = new CountDownLatch(runnableNotifications.size());
+    boolean expired = false;
+    try (ExecutorService scope = Executors.newVirtualThreadPerTaskExecutor()) {
+      runnableNotifications.forEach(
+          runnable ->
+              scope.execute(
+                  () -> {
+                    try {
+                      runnable.run();
+                    } catch (Throwable e) {
+                      exceptions.add(e);
+                    } finally {
+                      allFinished.countDown();
+                    }
+                  }));
+      try {
+        expired = !Deadline.await(allFinished);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      if (expired) {
+        scope.shutdownNow();
+      }
+    }
+    if (expired) {
+      throw new DeadlineExceededException();
+    }
+    if (!exceptions.isEmpty()) {
+      throw new AggregateException(exceptions);
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package an.awesome.pipelinr;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Run each notification handler in its own virtual thread.
+ *
+ * <p>Returns when any thread (handler) is finished. Unlike {@link ParallelWhenAny}, the remaining
+ * threads are interrupted and awaited before returning, so no handler outlives the call. If the
+ * deadline of the notification passes first, DeadlineExceededException is thrown.
+ *
+ * <p>All exceptions that happened before returning are captured in an AggregateException.
+ */
+public class VirtualThreadsWhenAny implements NotificationHandlingStrategy {
+
+  @Override
+  public void handle(List<Runnable> runnableNotifications) {
+    if (runnableNotifications.isEmpty()) {
+      return;
+    }
+    Collection<Throwable> exceptions = new CopyOnWriteArrayList<>();
+    Collection<Throwable> exceptionsBeforeReturning;
+    CountDownLatch anyFinished = new CountDownLatch(1);
+    boolean expired = false;
+    try (ExecutorService scope = Executors.newVirtualThreadPerTaskExecutor()) {
+      runnableNotifications.forEach(
+          runnable ->
+              scope.execute(
+                  () -> {
+                    try {
+                      runnable.run();
+                    } catch (Throwable e) {
+                      exceptions.add(e);
+                    } finally {
+                      anyFinished.countDown();
+                    }
+                  }));
+      try {
+        expired = !Deadline.await(anyFinished);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      exceptionsBeforeReturning = new ArrayList<>(exceptions);
+      scope.shutdownNow();
+    }
+    if (expired) {
+      throw new DeadlineExceededException();
+    }
+    if (!exceptionsBeforeReturning.isEmpty()) {
+      throw new AggregateException(exceptionsBeforeReturning);
+    }
+  }
+}
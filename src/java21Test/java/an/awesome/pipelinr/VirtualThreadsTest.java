@@ -0,0 +1,146 @@
+package an.awesome.pipelinr;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+class VirtualThreadsTest {
+
+  private final Collection<Thread> threads = new CopyOnWriteArrayList<>();
+
+  @Test
+  void supportsVirtualThreadsNoWait() throws InterruptedException {
+    // given
+    CountDownLatch handled = new CountDownLatch(3);
+    Pipeline pipeline =
+        pipelineWithHandlers(
+                new Republican(handled), new Republican(handled), new Republican(handled))
+            .with(VirtualThreadsNoWait::new);
+
+    // when
+    new GreetRepublicans().send(pipeline);
+
+    // then
+    assertThat(handled.await(3, TimeUnit.SECONDS)).isTrue();
+    assertThat(threads).hasSize(3).allMatch(Thread::isVirtual);
+  }
+
+  @Test
+  void supportsVirtualThreadsWhenAll() {
+    // given
+    Pipeline pipeline =
+        pipelineWithHandlers(
+                new ThrowingRepublican("Omg", 0),
+                new ThrowingRepublican("Oh!", 100),
+                new Republican(new CountDownLatch(1)))
+            .with(VirtualThreadsWhenAll::new);
+
+    // when
+    RuntimeException e =
+        assertThrows(RuntimeException.class, () -> new GreetRepublicans().send(pipeline));
+
+    // then
+    assertThat(e).isExactlyInstanceOf(AggregateException.class);
+    assertThat(e).hasMessageContaining("2 exception(s)");
+    assertThat(threads).hasSize(3).allMatch(Thread::isVirtual);
+  }
+
+  @Test
+  void supportsVirtualThreadsWhenAny() {
+    // given
+    Pipeline pipeline =
+        pipelineWithHandlers(
+                new ThrowingRepublican("Omg", 10_000),
+                new ThrowingRepublican("Nah", 0),
+                new ThrowingRepublican("Boo", 10_000))
+            .with(VirtualThreadsWhenAny::new);
+
+    // when
+    RuntimeException e =
+        assertThrows(RuntimeException.class, () -> new GreetRepublicans().send(pipeline));
+
+    // then
+    assertThat(e).isExactlyInstanceOf(AggregateException.class);
+    assertThat(e).hasMessageContaining("1 exception(s)");
+    assertThat(threads).hasSize(3).allMatch(VirtualThreadsTest::terminatesSoon);
+  }
+
+  @Test
+  void stopsWaitingForVirtualThreadsOnceDeadlineHasPassed() {
+    // given
+    Pipeline pipeline =
+        pipelineWithHandlers(new ThrowingRepublican("Omg", 10_000))
+            .with(VirtualThreadsWhenAll::new);
+
+    // when
+    assertThrows(
+        DeadlineExceededException.class,
+        () -> pipeline.send(new GreetRepublicans(), Deadline.after(Duration.ofMillis(50))));
+
+    // then
+    assertThat(threads).hasSize(1).allMatch(VirtualThreadsTest::terminatesSoon);
+  }
+
+  @Test
+  void returnsImmediatelyIfNoHandlersMatch() {
+    new GreetRepublicans().send(pipelineWithHandlers().with(VirtualThreadsWhenAny::new));
+  }
+
+  // a finished task lets the executor close a moment before its thread terminates
+  private static boolean terminatesSoon(Thread thread) {
+    try {
+      return thread.join(Duration.ofSeconds(1));
+    } catch (InterruptedException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private Pipelinr pipelineWithHandlers(Notification.Handler... handlers) {
+    return new Pipelinr().with(() -> Stream.of(handlers));
+  }
+
+  static class GreetRepublicans implements Notification {}
+
+  class Republican implements Notification.Handler<GreetRepublicans> {
+    private final CountDownLatch handled;
+
+    Republican(CountDownLatch handled) {
+      this.handled = handled;
+    }
+
+    @Override
+    public void handle(GreetRepublicans notification) {
+      threads.add(Thread.currentThread());
+      handled.countDown();
+    }
+  }
+
+  class ThrowingRepublican implements Notification.Handler<GreetRepublicans> {
+    private final String message;
+    private final long sleepMillis;
+
+    ThrowingRepublican(String message, long sleepMillis) {
+      this.message = message;
+      this.sleepMillis = sleepMillis;
+    }
+
+    @Override
+    public void handle(GreetRepublicans notification) {
+      threads.add(Thread.currentThread());
+      try {
+        Thread.sleep(sleepMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+      throw new RuntimeException(message);
+    }
+  }
+}
@@ -0,0 +1,239 @@
+package an.awesome.pipelinr;
+
+import static an.awesome.pipelinr.Preconditions.checkArgument;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Sends commands received from a {@link Flow.Publisher} and publishes their results, in the order
+ * commands are received.
+ *
+ * <p>At most {@code concurrency} commands are in flight or waiting for their results to be
+ * requested, so a slow subscriber slows down the publisher of commands instead of filling a buffer.
+ * Commands are sent with {@link Pipeline#sendAsync(Command)}, so they run concurrently with {@link
+ * Command.AsyncHandler}s. For blocking handlers, give an executor to send commands in, such as a
+ * thread pool, or a virtual thread per task executor on Java 21.
+ *
+ * <p>If a command fails, the subscriber receives its exception, and the publisher of commands is
+ * cancelled. The processor supports a single subscriber:
+ *
+ * <pre>
+ *   CommandProcessor&lt;GetPrice, Price&gt; prices = new CommandProcessor&lt;&gt;(pipeline, 16);
+ *   symbols.subscribe(prices);
+ *   prices.subscribe(priceSubscriber);
+ * </pre>
+ */
+public class CommandProcessor<C extends Command<R>, R> implements Flow.Processor<C, R> {
+
+  private final int concurrency;
+  private final Function<C, CompletableFuture<R>> send;
+
+  private final Queue<CompletableFuture<R>> window = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger windowSize = new AtomicInteger();
+  private final AtomicLong upstreamRequested = new AtomicLong();
+  private final AtomicLong demand = new AtomicLong();
+  private final AtomicInteger wip = new AtomicInteger();
+
+  private volatile Flow.Subscription upstream;
+  private volatile Flow.Subscriber<? super R> downstream;
+  private volatile boolean upstreamDone;
+  private volatile Throwable upstreamError;
+  private volatile Throwable invalidRequest;
+  private volatile boolean terminated;
+
+  public CommandProcessor(Pipeline pipeline, int concurrency) {
+    this(concurrency, command -> pipeline.<R, C>sendAsync(command).toCompletableFuture());
+    checkArgument(pipeline, "Pipeline must not be null");
+  }
+
+  public CommandProcessor(Pipeline pipeline, int concurrency, Executor executor) {
+    this(
+        concurrency,
+        command -> CompletableFuture.supplyAsync(() -> pipeline.send(command), executor));
+    checkArgument(pipeline, "Pipeline must not be null");
+    checkArgument(executor, "Executor must not be null");
+  }
+
+  private CommandProcessor(int concurrency, Function<C, CompletableFuture<R>> send) {
+    checkArgument(concurrency > 0, "Concurrency must be positive");
+    this.concurrency = concurrency;
+    this.send = send;
+  }
+
+  @Override
+  public void subscribe(Flow.Subscriber<? super R> subscriber) {
+    checkArgument(subscriber, "Subscriber must not be null");
+    boolean first;
+    synchronized (this) {
+      first = downstream == null;
+      if (first) {
+        downstream = subscriber;
+      }
+    }
+    if (!first) {
+      subscriber.onSubscribe(new CancelledSubscription());
+      subscriber.onError(
+          new IllegalStateException("Command processor supports a single subscriber"));
+      return;
+    }
+    subscriber.onSubscribe(new Subscription());
+    drain();
+  }
+
+  @Override
+  public void onSubscribe(Flow.Subscription subscription) {
+    checkArgument(subscription, "Subscription must not be null");
+    if (upstream != null) {
+      subscription.cancel();
+      return;
+    }
+    upstream = subscription;
+    drain();
+  }
+
+  @Override
+  public void onNext(C command) {
+    // counted in the window first, so that a concurrent drain never sees a free slot meanwhile
+    windowSize.incrementAndGet();
+    upstreamRequested.decrementAndGet();
+    CompletableFuture<R> result;
+    try {
+      result = send.apply(command);
+    } catch (Throwable e) {
+      result = CompletableFuture.failedFuture(e);
+    }
+    window.add(result);
+    result.whenComplete((it, e) -> drain());
+  }
+
+  @Override
+  public void onError(Throwable throwable) {
+    upstreamError = throwable;
+    upstreamDone = true;
+    drain();
+  }
+
+  @Override
+  public void onComplete() {
+    upstreamDone = true;
+    drain();
+  }
+
+  /** Emits results that are ready and requested, and requests commands to fill the window. */
+  private void drain() {
+    if (wip.getAndIncrement() != 0) {
+      return;
+    }
+    int missed = 1;
+    do {
+      Flow.Subscriber<? super R> subscriber = downstream;
+      if (subscriber != null && !terminated) {
+        emit(subscriber);
+      }
+      if (subscriber != null && !terminated) {
+        requestCommands();
+      }
+      missed = wip.addAndGet(-missed);
+    } while (missed != 0);
+  }
+
+  private void emit(Flow.Subscriber<? super R> subscriber) {
+    if (invalidRequest != null) {
+      terminate();
+      subscriber.onError(invalidRequest);
+      return;
+    }
+    CompletableFuture<R> head;
+    while ((head = window.peek()) != null && head.isDone()) {
+      if (head.isCompletedExceptionally()) {
+        terminate();
+        subscriber.onError(causeOf(head));
+        return;
+      }
+      if (demand.get() == 0) {
+        return;
+      }
+      window.poll();
+      windowSize.decrementAndGet();
+      demand.decrementAndGet();
+      subscriber.onNext(head.join());
+    }
+    if (upstreamDone && window.isEmpty()) {
+      terminated = true;
+      if (upstreamError != null) {
+        subscriber.onError(upstreamError);
+      } else {
+        subscriber.onComplete();
+      }
+    }
+  }
+
+  private void requestCommands() {
+    Flow.Subscription subscription = upstream;
+    if (subscription == null || upstreamDone) {
+      return;
+    }
+    long free = concurrency - windowSize.get() - upstreamRequested.get();
+    if (free > 0) {
+      upstreamRequested.addAndGet(free);
+      subscription.request(free);
+    }
+  }
+
+  private void terminate() {
+    terminated = true;
+    Flow.Subscription subscription = upstream;
+    if (subscription != null) {
+      subscription.cancel();
+    }
+    window.forEach(it -> it.cancel(false));
+  }
+
+  private static Throwable causeOf(CompletableFuture<?> failed) {
+    try {
+      failed.join();
+      throw new IllegalStateException("Future has not failed");
+    } catch (CompletionException e) {
+      return e.getCause();
+    } catch (RuntimeException e) {
+      return e;
+    }
+  }
+
+  private class Subscription implements Flow.Subscription {
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        invalidRequest =
+            new IllegalArgumentException("Requested number of results must be positive");
+      } else {
+        demand.getAndAccumulate(
+            n, (current, it) -> current + it < 0 ? Long.MAX_VALUE : current + it);
+      }
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      terminate();
+    }
+  }
+
+  private static class CancelledSubscription implements Flow.Subscription {
+
+    @Override
+    public void request(long n) {}
+
+    @Override
+    public void cancel() {}
+  }
+}
@@ -0,0 +1,86 @@
+package an.awesome.pipelinr;
+
+import static an.awesome.pipelinr.Preconditions.checkArgument;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+/**
+ * Sends notifications received from a {@link Flow.Publisher}, one at a time.
+ *
+ * <p>Requests {@code prefetch} notifications upfront, and requests more as they are sent, so the
+ * publisher never gets ahead by more than {@code prefetch} notifications. How handlers run is up to
+ * the {@link NotificationHandlingStrategy} of the pipeline.
+ *
+ * <p>If sending a notification throws, the subscription is cancelled. {@link #completion()}
+ * completes when the publisher completes, or exceptionally when the publisher or a send fails:
+ *
+ * <pre>
+ *   NotificationSubscriber&lt;PriceTick&gt; subscriber = new NotificationSubscriber&lt;&gt;(pipeline, 64);
+ *   ticks.subscribe(subscriber);
+ *   subscriber.completion().join();
+ * </pre>
+ */
+public class NotificationSubscriber<N extends Notification> implements Flow.Subscriber<N> {
+
+  private final Pipeline pipeline;
+  private final int prefetch;
+  private final int replenishAt;
+  private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+  private Flow.Subscription subscription;
+  private int received;
+
+  public NotificationSubscriber(Pipeline pipeline, int prefetch) {
+    checkArgument(pipeline, "Pipeline must not be null");
+    checkArgument(prefetch > 0, "Prefetch must be positive");
+    this.pipeline = pipeline;
+    this.prefetch = prefetch;
+    // requests in batches, rather than one notification at a time
+    this.replenishAt = Math.max(1, prefetch / 2);
+  }
+
+  @Override
+  public void onSubscribe(Flow.Subscription subscription) {
+    checkArgument(subscription, "Subscription must not be null");
+    if (this.subscription != null) {
+      subscription.cancel();
+      return;
+    }
+    this.subscription = subscription;
+    subscription.request(prefetch);
+  }
+
+  @Override
+  public void onNext(N notification) {
+    if (completion.isDone()) {
+      return;
+    }
+    try {
+      pipeline.send(notification);
+    } catch (Throwable e) {
+      subscription.cancel();
+      completion.completeExceptionally(e);
+      return;
+    }
+    if (++received == replenishAt) {
+      received = 0;
+      subscription.request(replenishAt);
+    }
+  }
+
+  @Override
+  public void onError(Throwable throwable) {
+    completion.completeExceptionally(throwable);
+  }
+
+  @Override
+  public void onComplete() {
+    completion.complete(null);
+  }
+
+  /** Returns a future of all notifications of the publisher being sent. */
+  public CompletableFuture<Void> completion() {
+    return completion;
+  }
+}
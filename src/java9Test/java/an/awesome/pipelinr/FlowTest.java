@@ -0,0 +1,221 @@
+package an.awesome.pipelinr;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class FlowTest {
+
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicInteger maxInFlight = new AtomicInteger();
+  private final AtomicInteger handled = new AtomicInteger();
+  private final Pipeline pipeline =
+      new Pipelinr()
+          .with((CommandHandlers) () -> Stream.of(new SquareHandler()))
+          .with((NotificationHandlers) () -> Stream.of(new OnPing()));
+
+  @AfterEach
+  void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  void publishesResultsInOrderOfCommands() throws InterruptedException {
+    // given
+    CommandProcessor<Square, Integer> processor = new CommandProcessor<>(pipeline, 4, executor);
+    Results results = new Results();
+    processor.subscribe(results);
+
+    // when
+    SubmissionPublisher<Square> commands = new SubmissionPublisher<>(executor, 16);
+    commands.subscribe(processor);
+    submit(commands, 100);
+    for (int requested = 10; requested <= 100; requested += 10) {
+      results.subscription.request(10);
+      int expected = requested;
+      await(() -> results.received.size() == expected);
+      assertThat(results.received).hasSize(expected);
+    }
+
+    // then
+    await(() -> results.completion.isDone());
+    assertThat(results.received)
+        .containsExactlyElementsOf(
+            IntStream.range(0, 100).map(it -> it * it).boxed().collect(Collectors.toList()));
+    assertThat(maxInFlight.get()).isBetween(1, 4);
+  }
+
+  @Test
+  void doesNotSendCommandsBeyondConcurrencyWithoutDemand() throws InterruptedException {
+    // given
+    CommandProcessor<Square, Integer> processor = new CommandProcessor<>(pipeline, 4, executor);
+    Results results = new Results();
+    processor.subscribe(results);
+
+    // when
+    SubmissionPublisher<Square> commands = new SubmissionPublisher<>(executor, 16);
+    commands.subscribe(processor);
+    submit(commands, 100);
+    await(() -> handled.get() == 4);
+    Thread.sleep(50);
+
+    // then
+    assertThat(handled).hasValue(4);
+    assertThat(results.received).isEmpty();
+    results.subscription.request(Long.MAX_VALUE);
+    await(() -> results.completion.isDone());
+    assertThat(results.received).hasSize(100);
+  }
+
+  @Test
+  void failsAndCancelsCommandsWhenCommandFails() throws InterruptedException {
+    // given
+    CommandProcessor<Square, Integer> processor = new CommandProcessor<>(pipeline, 2);
+    Results results = new Results();
+    processor.subscribe(results);
+    results.subscription.request(Long.MAX_VALUE);
+
+    // when
+    SubmissionPublisher<Square> commands = new SubmissionPublisher<>(executor, 16);
+    commands.subscribe(processor);
+    commands.submit(new Square(1));
+    commands.submit(new Square(-1));
+
+    // then
+    await(() -> results.completion.isDone());
+    assertThat(results.received).containsExactly(1);
+    assertThat(results.completion)
+        .hasFailedWithThrowableThat()
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Negative number");
+    await(() -> commands.getNumberOfSubscribers() == 0);
+  }
+
+  @Test
+  void rejectsSecondSubscriber() {
+    // given
+    CommandProcessor<Square, Integer> processor = new CommandProcessor<>(pipeline, 2);
+    processor.subscribe(new Results());
+
+    // when
+    Results second = new Results();
+    processor.subscribe(second);
+
+    // then
+    assertThat(second.completion)
+        .hasFailedWithThrowableThat()
+        .hasMessage("Command processor supports a single subscriber");
+  }
+
+  @Test
+  void sendsPublishedNotifications() {
+    // given
+    NotificationSubscriber<Ping> subscriber = new NotificationSubscriber<>(pipeline, 8);
+
+    // when
+    try (SubmissionPublisher<Ping> notifications = new SubmissionPublisher<>(executor, 4)) {
+      notifications.subscribe(subscriber);
+      IntStream.range(0, 1000).forEach(it -> notifications.submit(new Ping()));
+    }
+
+    // then
+    subscriber.completion().join();
+    assertThat(handled).hasValue(1000);
+  }
+
+  /**
+   * Submits commands from another thread, since submit blocks until the processor requests more.
+   */
+  private void submit(SubmissionPublisher<Square> commands, int count) {
+    executor.execute(
+        () -> {
+          IntStream.range(0, count).forEach(it -> commands.submit(new Square(it)));
+          commands.close();
+        });
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + SECONDS.toNanos(5);
+    while (!condition.getAsBoolean()) {
+      assertThat(System.nanoTime() - deadline).isNegative();
+      Thread.sleep(1);
+    }
+  }
+
+  static class Results implements Flow.Subscriber<Integer> {
+    final List<Integer> received = new CopyOnWriteArrayList<>();
+    final CompletableFuture<Void> completion = new CompletableFuture<>();
+    volatile Flow.Subscription subscription;
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+    }
+
+    @Override
+    public void onNext(Integer item) {
+      received.add(item);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      completion.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+      completion.complete(null);
+    }
+  }
+
+  static class Square implements Command<Integer> {
+    final int number;
+
+    Square(int number) {
+      this.number = number;
+    }
+  }
+
+  static class Ping implements Notification {}
+
+  class SquareHandler implements Command.Handler<Square, Integer> {
+    @Override
+    public Integer handle(Square command) {
+      maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+      try {
+        if (command.number < 0) {
+          throw new IllegalArgumentException("Negative number");
+        }
+        Thread.sleep(1);
+        handled.incrementAndGet();
+        return command.number * command.number;
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      } finally {
+        inFlight.decrementAndGet();
+      }
+    }
+  }
+
+  class OnPing implements Notification.Handler<Ping> {
+    @Override
+    public void handle(Ping notification) {
+      handled.incrementAndGet();
+    }
+  }
+}
@@ -0,0 +1,49 @@
+package an.awesome.pipelinr;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures the cost of a cache hit, which must not take locks. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CachingMiddlewareBenchmark {
+
+  private final CachingMiddleware cache = new CachingMiddleware(10_000, Duration.ofHours(1));
+  private final GetPrice getPrice = new GetPrice();
+  private final Command.Middleware.Next<String> next = () -> "42";
+
+  @Setup
+  public void setUp() {
+    cache.invoke(getPrice, next);
+  }
+
+  @Benchmark
+  public String hit() {
+    return cache.invoke(getPrice, next);
+  }
+
+  @Benchmark
+  @Group("concurrent")
+  @GroupThreads(4)
+  public String hitConcurrently() {
+    return cache.invoke(getPrice, next);
+  }
+
+  static class GetPrice implements Command<String>, CachingMiddleware.Cacheable {}
+}
@@ -0,0 +1,110 @@
+package an.awesome.pipelinr;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of sending a command through the pipeline.
+ *
+ * <p>The matching handler is registered last, so the default router has to scan all handlers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandDispatchBenchmark {
+
+  @Param({"1", "10", "500"})
+  int handlers;
+
+  @Param({"0", "1", "5", "10"})
+  int middlewares;
+
+  @Param({"default", "indexed", "compiled"})
+  String dispatch;
+
+  @Param({"false", "true"})
+  boolean metrics;
+
+  private final Ping ping = new Ping();
+
+  private Pipeline pipeline;
+
+  @Setup
+  public void setUp() {
+    List<Command.Handler> commandHandlers = new ArrayList<>();
+    for (int i = 1; i < handlers; i++) {
+      commandHandlers.add(new PongHandler());
+    }
+    commandHandlers.add(new PingHandler());
+
+    List<Command.Middleware> commandMiddlewares = new ArrayList<>();
+    for (int i = 0; i < middlewares; i++) {
+      commandMiddlewares.add(new PassThrough());
+    }
+
+    CommandHandlers supplier = commandHandlers::stream;
+    Pipelinr pipelinr =
+        new Pipelinr().with(supplier).with((Command.Middlewares) commandMiddlewares::stream);
+    if (dispatch.equals("indexed")) {
+      pipelinr.with(new IndexedCommandRouter(supplier));
+    }
+    if (metrics) {
+      pipelinr.with(new PipelineMetrics());
+    }
+    this.pipeline = dispatch.equals("compiled") ? pipelinr.build() : pipelinr;
+  }
+
+  @Benchmark
+  public String send() {
+    return pipeline.send(ping);
+  }
+
+  @Benchmark
+  @Group("concurrent")
+  @GroupThreads(4)
+  public String sendConcurrently() {
+    return pipeline.send(ping);
+  }
+
+  static class Ping implements Command<String> {}
+
+  static class Pong implements Command<String> {}
+
+  static class PingHandler implements Command.Handler<Ping, String> {
+    @Override
+    public String handle(Ping command) {
+      return "Pong";
+    }
+  }
+
+  static class PongHandler implements Command.Handler<Pong, String> {
+    @Override
+    public String handle(Pong command) {
+      return "Ping";
+    }
+  }
+
+  static class PassThrough implements Command.Middleware {
+    @Override
+    public <R, C extends Command<R>> R invoke(C command, Next<R> next) {
+      return next.invoke();
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package an.awesome.pipelinr;
+
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures generic type resolution: cold (a full scan of the class hierarchy), warm (a cached
+ * result), and the default handler matching that builds upon it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GenericBenchmark {
+
+  private static final TypeVariable<?> COMMAND = Command.Handler.class.getTypeParameters()[0];
+
+  private final Ping ping = new Ping();
+  private final PingHandler handler = new PingHandler();
+  private final Generic<String> generic = new IKnowMyType<String>() {}.type;
+
+  @Benchmark
+  public Type coldResolve() {
+    return Generic.resolve(PingHandler.class, COMMAND);
+  }
+
+  @Benchmark
+  public Class<?> warmResolve() {
+    return generic.resolve();
+  }
+
+  @Benchmark
+  public boolean defaultMatches() {
+    return handler.matches(ping);
+  }
+
+  @Benchmark
+  @Group("concurrent")
+  @GroupThreads(4)
+  public boolean defaultMatchesConcurrently() {
+    return handler.matches(ping);
+  }
+
+  abstract static class IKnowMyType<T> {
+    final Generic<T> type = new Generic<T>(getClass()) {};
+  }
+
+  static class Ping implements Command<String> {}
+
+  static class PingHandler implements Command.Handler<Ping, String> {
+    @Override
+    public String handle(Ping command) {
+      return "Pong";
+    }
+  }
+}
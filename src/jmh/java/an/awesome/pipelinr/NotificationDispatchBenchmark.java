@@ -0,0 +1,160 @@
+package an.awesome.pipelinr;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the cost of sending a notification under every built-in handling strategy.
+ *
+ * <p>Note that ParallelNoWait and RingBufferNoWait do not wait for handlers, so they measure the
+ * cost of submitting them to the thread pool or publishing them to the ring buffer, which waits for
+ * consumers once the ring buffer is full.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NotificationDispatchBenchmark {
+
+  @Param({
+    "StopOnException",
+    "ContinueOnException",
+    "Async",
+    "ParallelWhenAll",
+    "ParallelWhenAny",
+    "ParallelNoWait",
+    "RingBufferNoWait"
+  })
+  String strategy;
+
+  @Param({"1", "10"})
+  int handlers;
+
+  @Param({"0", "5"})
+  int middlewares;
+
+  @Param({"default", "indexed", "compiled"})
+  String dispatch;
+
+  private final Ping ping = new Ping();
+
+  private ExecutorService threadPool;
+  // consumers of a ring buffer occupy their threads, so they don't share the thread pool
+  private ExecutorService consumers;
+  private Pipeline pipeline;
+
+  @Setup
+  public void setUp() {
+    threadPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    consumers = Executors.newCachedThreadPool();
+
+    List<Notification.Handler> notificationHandlers = new ArrayList<>();
+    for (int i = 0; i < handlers; i++) {
+      notificationHandlers.add(new PingHandler());
+    }
+    notificationHandlers.add(new PongHandler());
+
+    List<Notification.Middleware> notificationMiddlewares = new ArrayList<>();
+    for (int i = 0; i < middlewares; i++) {
+      notificationMiddlewares.add(new PassThrough());
+    }
+
+    NotificationHandlers supplier = notificationHandlers::stream;
+    Pipelinr pipelinr =
+        new Pipelinr()
+            .with(supplier)
+            .with((Notification.Middlewares) notificationMiddlewares::stream)
+            .with(strategy());
+    if (dispatch.equals("indexed")) {
+      pipelinr.withNotificationRouter(new IndexedNotificationRouter(supplier));
+    }
+    this.pipeline = dispatch.equals("compiled") ? pipelinr.build() : pipelinr;
+  }
+
+  @TearDown
+  public void tearDown() {
+    threadPool.shutdownNow();
+    consumers.shutdownNow();
+  }
+
+  private Supplier<NotificationHandlingStrategy> strategy() {
+    switch (strategy) {
+      case "StopOnException":
+        return StopOnException::new;
+      case "ContinueOnException":
+        return ContinueOnException::new;
+      case "Async":
+        return () -> new Async(threadPool);
+      case "ParallelWhenAll":
+        return () -> new ParallelWhenAll(threadPool);
+      case "ParallelWhenAny":
+        return () -> new ParallelWhenAny(threadPool);
+      case "ParallelNoWait":
+        return () -> new ParallelNoWait(threadPool);
+      case "RingBufferNoWait":
+        RingBufferNoWait ringBuffer =
+            new RingBufferNoWait(consumers, 4096, 2, RingBufferNoWait.WaitStrategy.YIELDING);
+        return () -> ringBuffer;
+      default:
+        throw new IllegalArgumentException("Unknown strategy " + strategy);
+    }
+  }
+
+  @Benchmark
+  public void send() {
+    pipeline.send(ping);
+  }
+
+  @Benchmark
+  @Group("concurrent")
+  @GroupThreads(4)
+  public void sendConcurrently() {
+    pipeline.send(ping);
+  }
+
+  static class Ping implements Notification {}
+
+  static class Pong implements Notification {}
+
+  static class PingHandler implements Notification.Handler<Ping> {
+    @Override
+    public void handle(Ping notification) {
+      Blackhole.consumeCPU(16);
+    }
+  }
+
+  static class PongHandler implements Notification.Handler<Pong> {
+    @Override
+    public void handle(Pong notification) {
+      Blackhole.consumeCPU(16);
+    }
+  }
+
+  static class PassThrough implements Notification.Middleware {
+    @Override
+    public <N extends Notification> void invoke(N notification, Next next) {
+      next.invoke();
+    }
+  }
+}
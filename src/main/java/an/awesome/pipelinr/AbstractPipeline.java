@@ -0,0 +1,259 @@
+package an.awesome.pipelinr;
+
+import static an.awesome.pipelinr.Preconditions.checkArgument;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.BaseStream;
+
+/**
+ * Dispatches commands and notifications. Subclasses decide where routers, middleware chains and the
+ * notification handling strategy come from: {@link Pipelinr} obtains them on every send, except for
+ * middleware chains that it builds on the first send, whereas {@link CompiledPipeline} holds a
+ * snapshot.
+ */
+abstract class AbstractPipeline implements Pipeline {
+
+  abstract Command.Router commandRouter();
+
+  /** Returns a router for a batch of commands, which is used for a single call only. */
+  abstract Command.Router batchRouter();
+
+  abstract Notification.Router notificationRouter();
+
+  abstract CommandChain commandChain();
+
+  abstract AsyncCommandChain asyncCommandChain();
+
+  abstract NotificationChain notificationChain();
+
+  abstract NotificationHandlingStrategy notificationHandlingStrategy();
+
+  /** Returns metrics to record sends into, or null if metrics are disabled. */
+  abstract PipelineMetrics metrics();
+
+  /** Returns circuit breakers to guard handlers with, or null if circuit breakers are disabled. */
+  abstract CircuitBreakers circuitBreakers();
+
+  @Override
+  public <R, C extends Command<R>> R send(C command) {
+    checkArgument(command, "Command must not be null");
+    Deadline.checkCurrent();
+
+    PipelineMetrics metrics = metrics();
+    HandleCommand<R, C> next =
+        new HandleCommand<>(commandRouter(), HandlerCalls.of(metrics, circuitBreakers()), command);
+    if (metrics == null) {
+      return invoke(command, next);
+    }
+    return metrics
+        .timer(PipelineMetrics.Kind.COMMAND, command.getClass())
+        .time(() -> invoke(command, next));
+  }
+
+  private <R, C extends Command<R>> R invoke(C command, HandleCommand<R, C> next) {
+    try {
+      return commandChain().invoke(command, next);
+    } catch (Throwable e) {
+      // nobody gets the stream of a stream command that failed in a middleware, so nobody closes it
+      if (command instanceof StreamCommand) {
+        next.closeResult(e);
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Sends commands in batches, one batch per handler, and returns their results in the same order.
+   *
+   * <p>Handlers are routed before middlewares run, and each command class is routed once per call.
+   * {@link Command.BatchHandler}s receive their commands at once, going through middlewares once as
+   * a {@link Batch}. Other handlers receive their commands one by one, each going through
+   * middlewares. Batches run in the order of their first command; the first exception stops the
+   * rest, and so does a deadline that passes between batches or commands.
+   */
+  @Override
+  public <R, C extends Command<R>> List<R> sendAll(Collection<C> commands) {
+    checkArgument(commands, "Commands must not be null");
+    Deadline.checkCurrent();
+
+    CommandBatches<R, C> batches = new CommandBatches<>(commands, batchRouter());
+    PipelineMetrics metrics = metrics();
+    return batches.send(commandChain(), metrics, HandlerCalls.of(metrics, circuitBreakers()));
+  }
+
+  @Override
+  public <R, C extends Command<R>> CompletionStage<R> sendAsync(C command) {
+    checkArgument(command, "Command must not be null");
+    try {
+      Deadline.checkCurrent();
+    } catch (DeadlineExceededException e) {
+      CompletableFuture<R> expired = new CompletableFuture<>();
+      expired.completeExceptionally(e);
+      return expired;
+    }
+
+    PipelineMetrics metrics = metrics();
+    HandleCommandAsync<R, C> next =
+        new HandleCommandAsync<>(
+            commandRouter(), HandlerCalls.of(metrics, circuitBreakers()), command);
+    if (metrics == null) {
+      return invokeAsync(command, next);
+    }
+    long start = System.nanoTime();
+    PipelineMetrics.Timer timer = metrics.timer(PipelineMetrics.Kind.COMMAND, command.getClass());
+    return invokeAsync(command, next)
+        .whenComplete((it, e) -> timer.record(System.nanoTime() - start, e != null));
+  }
+
+  private <R, C extends Command<R>> CompletionStage<R> invokeAsync(
+      C command, HandleCommandAsync<R, C> next) {
+    CompletionStage<R> result = asyncCommandChain().invoke(command, next);
+    if (!(command instanceof StreamCommand)) {
+      return result;
+    }
+    // as with send, nobody gets the stream of a stream command that failed in a middleware
+    return result.whenComplete(
+        (it, e) -> {
+          if (e != null) {
+            next.closeResult(e instanceof CompletionException ? e.getCause() : e);
+          }
+        });
+  }
+
+  @Override
+  public <N extends Notification> void send(N notification) {
+    checkArgument(notification, "Notification must not be null");
+    Deadline.checkCurrent();
+
+    PipelineMetrics metrics = metrics();
+    HandlerCalls calls = HandlerCalls.of(metrics, circuitBreakers());
+    if (metrics == null) {
+      handle(notification, calls);
+      return;
+    }
+    metrics
+        .timer(PipelineMetrics.Kind.NOTIFICATION, notification.getClass())
+        .time(() -> handle(notification, calls));
+  }
+
+  private <N extends Notification> void handle(N notification, HandlerCalls calls) {
+    NotificationChain chain = notificationChain();
+    List<Notification.Handler<N>> handlers = notificationRouter().route(notification);
+    List<Runnable> runnableNotifications = new ArrayList<>(handlers.size());
+    for (Notification.Handler<N> handler : handlers) {
+      Runnable runnable;
+      if (calls == null) {
+        runnable = () -> chain.invoke(notification, () -> handler.handle(notification));
+      } else {
+        runnable =
+            () ->
+                chain.invoke(
+                    notification,
+                    () ->
+                        calls.run(
+                            PipelineMetrics.Kind.NOTIFICATION_HANDLER,
+                            handler,
+                            () -> handler.handle(notification)));
+      }
+      runnableNotifications.add(Deadline.propagate(runnable));
+    }
+
+    notificationHandlingStrategy().handle(notification, runnableNotifications);
+  }
+
+  private static class HandleCommand<R, C extends Command<R>>
+      implements Command.Middleware.Next<R> {
+
+    private final Command.Router router;
+    private final HandlerCalls calls;
+    private final C command;
+    private R result;
+
+    HandleCommand(Command.Router router, HandlerCalls calls, C command) {
+      this.router = router;
+      this.calls = calls;
+      this.command = command;
+    }
+
+    @Override
+    public R invoke() {
+      Command.Handler<C, R> handler = router.route(command);
+      Deadline.checkCurrent();
+      if (calls == null) {
+        result = handler.handle(command);
+      } else {
+        result =
+            calls.call(
+                PipelineMetrics.Kind.COMMAND_HANDLER, handler, () -> handler.handle(command));
+      }
+      return result;
+    }
+
+    /**
+     * Closes the stream returned by the handler, if any, adding failures to close to a given one.
+     */
+    void closeResult(Throwable failure) {
+      closeStream(result, failure);
+    }
+  }
+
+  /** Closes a given result if it is a stream, adding failures to close to a given failure. */
+  static void closeStream(Object result, Throwable failure) {
+    if (!(result instanceof BaseStream)) {
+      return;
+    }
+    try {
+      ((BaseStream<?, ?>) result).close();
+    } catch (Throwable e) {
+      failure.addSuppressed(e);
+    }
+  }
+
+  private static class HandleCommandAsync<R, C extends Command<R>>
+      implements Command.AsyncMiddleware.Next<R> {
+
+    private final Command.Router router;
+    private final HandlerCalls calls;
+    private final C command;
+    // async middlewares may call the handler in another thread, which doesn't see the deadline
+    private final Deadline deadline;
+    private volatile R result;
+
+    HandleCommandAsync(Command.Router router, HandlerCalls calls, C command) {
+      this.router = router;
+      this.calls = calls;
+      this.command = command;
+      this.deadline = Deadline.current().orElse(null);
+    }
+
+    @Override
+    public CompletionStage<R> invoke() {
+      Command.Handler<C, R> handler = router.route(command);
+      if (deadline != null) {
+        deadline.checkNotExpired();
+      }
+      CompletionStage<R> stage =
+          calls == null ? handle(handler) : calls.callAsync(handler, () -> handle(handler));
+      return stage.whenComplete((it, e) -> result = it);
+    }
+
+    /**
+     * Closes the stream returned by the handler, if any, adding failures to close to a given one.
+     */
+    void closeResult(Throwable failure) {
+      closeStream(result, failure);
+    }
+
+    private CompletionStage<R> handle(Command.Handler<C, R> handler) {
+      if (handler instanceof Command.AsyncHandler) {
+        return ((Command.AsyncHandler<C, R>) handler).handleAsync(command);
+      }
+      return CompletableFuture.completedFuture(handler.handle(command));
+    }
+  }
+}
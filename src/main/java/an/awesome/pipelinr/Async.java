@@ -9,7 +9,8 @@ import java.util.concurrent.ExecutorService;
 /**
  * Run all notification handlers asynchronously.
  *
- * <p>Returns when all handlers are finished.
+ * <p>Returns when all handlers are finished. If the deadline of the notification passes first,
+ * stops waiting and throws DeadlineExceededException.
  *
  * <p>In case of any exception(s), they will be captured in an AggregateException.
  */
@@ -24,7 +25,8 @@ public class Async implements NotificationHandlingStrategy {
   @Override
   public void handle(List<Runnable> runnableNotifications) {
     Collection<Throwable> exceptions = new CopyOnWriteArrayList<>();
-    CompletableFuture.runAsync(
+    Deadline.join(
+        CompletableFuture.runAsync(
             () -> {
               runnableNotifications.forEach(
                   it -> {
@@ -35,8 +37,7 @@ public class Async implements NotificationHandlingStrategy {
                     }
                   });
             },
-            threadPool)
-        .join();
+            threadPool));
 
     if (!exceptions.isEmpty()) {
       throw new AggregateException(exceptions);
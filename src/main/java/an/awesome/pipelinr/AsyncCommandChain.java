@@ -0,0 +1,81 @@
+package an.awesome.pipelinr;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * An immutable, array-backed chain of async command middlewares.
+ *
+ * <p>Synchronous middlewares never block: they run once the rest of the chain completes, and their
+ * next step returns the command result or throws its exception right away. So they see the result,
+ * as with {@link Pipeline#send(Command)}, but run after the handler rather than around it.
+ * Middlewares that also implement {@link Command.AsyncMiddleware} run as async middlewares instead.
+ * Whatever any step throws is returned as an exceptionally completed stage.
+ */
+final class AsyncCommandChain {
+
+  private final Command.AsyncMiddleware[] middlewares;
+
+  AsyncCommandChain(
+      Stream<Command.Middleware> middlewares, Stream<Command.AsyncMiddleware> asyncMiddlewares) {
+    this.middlewares =
+        Stream.concat(middlewares.map(AsyncCommandChain::adapt), asyncMiddlewares)
+            .toArray(Command.AsyncMiddleware[]::new);
+  }
+
+  <R, C extends Command<R>> CompletionStage<R> invoke(
+      C command, Command.AsyncMiddleware.Next<R> handler) {
+    return invoke(0, command, handler);
+  }
+
+  private <R, C extends Command<R>> CompletionStage<R> invoke(
+      int index, C command, Command.AsyncMiddleware.Next<R> handler) {
+    try {
+      if (index == middlewares.length) {
+        return handler.invoke();
+      }
+      return middlewares[index].invoke(command, () -> invoke(index + 1, command, handler));
+    } catch (Throwable e) {
+      CompletableFuture<R> failed = new CompletableFuture<>();
+      failed.completeExceptionally(e);
+      return failed;
+    }
+  }
+
+  private static Command.AsyncMiddleware adapt(Command.Middleware middleware) {
+    if (middleware instanceof Command.AsyncMiddleware) {
+      return (Command.AsyncMiddleware) middleware;
+    }
+    return new Command.AsyncMiddleware() {
+      @Override
+      public <R, C extends Command<R>> CompletionStage<R> invoke(C command, Next<R> next) {
+        // the stage may complete in another thread, which doesn't see the deadline of the sender
+        Deadline deadline = Deadline.current().orElse(null);
+        return next.invoke()
+            .handle(
+                (result, failure) -> {
+                  Supplier<R> complete =
+                      () -> middleware.invoke(command, () -> get(result, failure));
+                  return deadline == null ? complete.get() : deadline.attach(complete);
+                });
+      }
+    };
+  }
+
+  private static <R> R get(R result, Throwable failure) {
+    if (failure == null) {
+      return result;
+    }
+    Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+    if (cause instanceof RuntimeException) {
+      throw (RuntimeException) cause;
+    }
+    if (cause instanceof Error) {
+      throw (Error) cause;
+    }
+    throw new CompletionException(cause);
+  }
+}
@@ -0,0 +1,31 @@
+package an.awesome.pipelinr;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A group of commands of the same type that {@link Pipeline#sendAll(java.util.Collection)} passes
+ * to a {@link Command.BatchHandler} in one go.
+ *
+ * <p>Middlewares see a batch as a single command, so they run once per batch (for example, to wrap
+ * the whole batch in a single transaction). Middlewares that care about the commands, such as
+ * authorization, look into {@link #commands()}. Metrics record a batch under {@code Batch.class}.
+ * Batches are not meant to be sent on their own.
+ */
+public final class Batch<C extends Command<R>, R> implements Command<List<R>> {
+
+  private final List<C> commands;
+
+  Batch(List<C> commands) {
+    this.commands = Collections.unmodifiableList(commands);
+  }
+
+  public List<C> commands() {
+    return commands;
+  }
+
+  @Override
+  public String toString() {
+    return "Batch of " + commands.size() + " command(s)";
+  }
+}
@@ -0,0 +1,268 @@
+package an.awesome.pipelinr;
+
+import static an.awesome.pipelinr.Preconditions.checkArgument;
+import static an.awesome.pipelinr.Runnables.runQuietly;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Run each notification handler in a thread pool, queueing at most {@code capacity} handlers and
+ * running at most {@code parallelism} of them at once.
+ *
+ * <p>Returns immediately and does not wait for any handlers to finish, unless the queue is full and
+ * the overflow is {@link Overflow#BLOCK} or {@link Overflow#CALLER_RUNS}.
+ *
+ * <p>Note that you cannot capture any exceptions, except for {@link NotificationRejectedException}
+ * when the queue is full and the overflow is {@link Overflow#REJECT}. Handlers of a notification
+ * are rejected together if the queue has no space for all of them when the notification is sent.
+ * Concurrent sends may still take that space first, in which case the handlers queued until then
+ * run and the rest are rejected.
+ *
+ * <p>Optionally, handlers are shed when they wait in the queue for too long, as in CoDel: once
+ * every handler taken from the queue during {@code interval} has waited longer than {@code target},
+ * handlers are shed at an increasing rate until waiting time drops below {@code target} again.
+ *
+ * <p>{@code capacity} and {@code parallelism} bound handlers of all notifications sent through the
+ * same instance, so a pipeline must return the same instance for every send:
+ *
+ * <pre>
+ *   BoundedParallelNoWait strategy = new BoundedParallelNoWait(executor, 10_000, 8, Overflow.DROP_OLDEST);
+ *   new Pipelinr().with(() -&gt; strategy);
+ * </pre>
+ */
+public class BoundedParallelNoWait implements NotificationHandlingStrategy {
+
+  public enum Overflow {
+    /** Waits until the queue has space. */
+    BLOCK,
+    /** Runs the handler in the thread that sends the notification. */
+    CALLER_RUNS,
+    /** Drops the handler that has been waiting in the queue the longest. */
+    DROP_OLDEST,
+    /** Throws {@link NotificationRejectedException}. */
+    REJECT
+  }
+
+  private final ExecutorService executorService;
+  private final int capacity;
+  private final int parallelism;
+  private final Overflow overflow;
+  private final CoDel coDel;
+
+  private final BlockingDeque<Queued> queue;
+  private final AtomicInteger workers = new AtomicInteger();
+  private final LatencyHistogram sojournTime = new LatencyHistogram();
+  private final LongAdder dropped = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+  private final LongAdder shed = new LongAdder();
+
+  public BoundedParallelNoWait(
+      ExecutorService executorService, int capacity, int parallelism, Overflow overflow) {
+    this(executorService, capacity, parallelism, overflow, null);
+  }
+
+  public BoundedParallelNoWait(
+      ExecutorService executorService,
+      int capacity,
+      int parallelism,
+      Overflow overflow,
+      Duration target,
+      Duration interval) {
+    this(executorService, capacity, parallelism, overflow, new CoDel(target, interval));
+  }
+
+  private BoundedParallelNoWait(
+      ExecutorService executorService,
+      int capacity,
+      int parallelism,
+      Overflow overflow,
+      CoDel coDel) {
+    checkArgument(executorService, "Executor service must not be null");
+    checkArgument(capacity > 0, "Capacity must be positive");
+    checkArgument(parallelism > 0, "Parallelism must be positive");
+    checkArgument(overflow, "Overflow must not be null");
+    this.executorService = executorService;
+    this.capacity = capacity;
+    this.parallelism = parallelism;
+    this.overflow = overflow;
+    this.coDel = coDel;
+    this.queue = new LinkedBlockingDeque<>(capacity);
+  }
+
+  @Override
+  public void handle(List<Runnable> runnableNotifications) {
+    if (overflow == Overflow.REJECT && queue.remainingCapacity() < runnableNotifications.size()) {
+      rejected.add(runnableNotifications.size());
+      throw new NotificationRejectedException(capacity);
+    }
+    runnableNotifications.forEach(this::enqueue);
+  }
+
+  /** Returns the number of handlers waiting in the queue. */
+  public int queueDepth() {
+    return queue.size();
+  }
+
+  /** Returns how long handlers waited in the queue before they were run or shed. */
+  public LatencyHistogram sojournTime() {
+    return sojournTime;
+  }
+
+  /** Returns the number of handlers dropped by {@link Overflow#DROP_OLDEST}. */
+  public long dropped() {
+    return dropped.sum();
+  }
+
+  /** Returns the number of handlers rejected by {@link Overflow#REJECT}. */
+  public long rejected() {
+    return rejected.sum();
+  }
+
+  /** Returns the number of handlers shed because they waited in the queue for too long. */
+  public long shed() {
+    return shed.sum();
+  }
+
+  private void enqueue(Runnable runnable) {
+    Queued queued = new Queued(runnable, System.nanoTime());
+    if (!queue.offer(queued)) {
+      switch (overflow) {
+        case BLOCK:
+          try {
+            queue.put(queued);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the queue", e);
+          }
+          break;
+        case CALLER_RUNS:
+          runQuietly(runnable);
+          return;
+        case DROP_OLDEST:
+          while (!queue.offer(queued)) {
+            if (queue.pollFirst() != null) {
+              dropped.increment();
+            }
+          }
+          break;
+        case REJECT:
+          rejected.increment();
+          throw new NotificationRejectedException(capacity);
+      }
+    }
+    schedule();
+  }
+
+  private void schedule() {
+    while (!queue.isEmpty()) {
+      int running = workers.get();
+      if (running >= parallelism) {
+        return;
+      }
+      if (workers.compareAndSet(running, running + 1)) {
+        try {
+          executorService.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+          workers.decrementAndGet();
+          throw e;
+        }
+        return;
+      }
+    }
+  }
+
+  private void drain() {
+    try {
+      Queued queued;
+      while ((queued = queue.poll()) != null) {
+        long now = System.nanoTime();
+        long sojourn = now - queued.enqueuedAt;
+        sojournTime.record(sojourn);
+        if (coDel != null && coDel.shouldShed(sojourn, now)) {
+          shed.increment();
+        } else {
+          runQuietly(queued.runnable);
+        }
+      }
+    } finally {
+      workers.decrementAndGet();
+      // a handler may have been queued after the last poll, while this worker was still counted
+      schedule();
+    }
+  }
+
+  private static class Queued {
+
+    private final Runnable runnable;
+    private final long enqueuedAt;
+
+    Queued(Runnable runnable, long enqueuedAt) {
+      this.runnable = runnable;
+      this.enqueuedAt = enqueuedAt;
+    }
+  }
+
+  /** Controlled Delay: sheds while waiting time stays above target, at a rate growing with sqrt. */
+  private static class CoDel {
+
+    private final long target;
+    private final long interval;
+
+    private boolean aboveTarget;
+    private long firstAboveTime;
+    private long shedNext;
+    private int count;
+    private boolean shedding;
+
+    CoDel(Duration target, Duration interval) {
+      checkArgument(target, "Target must not be null");
+      checkArgument(interval, "Interval must not be null");
+      checkArgument(!target.isNegative() && !target.isZero(), "Target must be positive");
+      checkArgument(!interval.isNegative() && !interval.isZero(), "Interval must be positive");
+      this.target = target.toNanos();
+      this.interval = interval.toNanos();
+    }
+
+    synchronized boolean shouldShed(long sojourn, long now) {
+      if (sojourn < target) {
+        aboveTarget = false;
+        shedding = false;
+        return false;
+      }
+      if (!aboveTarget) {
+        // System.nanoTime() may be 0 or negative, so it can't mark that waiting time is below
+        // target
+        aboveTarget = true;
+        firstAboveTime = now + interval;
+        return false;
+      }
+      if (now - firstAboveTime < 0) {
+        return false;
+      }
+      if (!shedding) {
+        shedding = true;
+        // resume near the previous rate if shedding stopped only recently
+        count = count > 2 && now - shedNext < 16 * interval ? count - 2 : 1;
+        shedNext = now + controlLaw(count);
+        return true;
+      }
+      if (now - shedNext >= 0) {
+        count++;
+        shedNext += controlLaw(count);
+        return true;
+      }
+      return false;
+    }
+
+    private long controlLaw(int count) {
+      return (long) (interval / Math.sqrt(count));
+    }
+  }
+}
@@ -0,0 +1,475 @@
+package an.awesome.pipelinr;
+
+import static an.awesome.pipelinr.Preconditions.checkArgument;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Caches results of {@link Cacheable} commands, keyed by the command's {@code equals} and {@code
+ * hashCode}. Exceptions are not cached.
+ *
+ * <pre>
+ *   CachingMiddleware cache = new CachingMiddleware(10_000, Duration.ofMinutes(5));
+ *   new Pipelinr()
+ *       .with(() -&gt; Stream.of(cache))
+ *       .with(() -&gt; Stream.of(cache.invalidateOn(PriceChanged.class, it -&gt; new GetPrice(it.sku()))));
+ * </pre>
+ *
+ * <p>Results live for {@code ttl}. If {@code refreshAfter} is set, the first hit after it sends the
+ * command again in the background and keeps returning the cached result until the new one arrives.
+ * A background refresh runs the rest of the chain, that is, later middlewares and the handler, in
+ * {@code refreshExecutor}, so it doesn't see thread-local context of the sender, such as the
+ * current {@link Deadline}, a transaction or a security context. If a handler relies on such
+ * context, don't set {@code refreshAfter}, or put this middleware after the one that sets it up.
+ *
+ * <p>A result that was being computed while its command was invalidated is returned, but not
+ * cached, since it may be computed from data that the invalidation was about. So is a refreshed
+ * result whose entry was invalidated or evicted meanwhile. Invalidations of other commands don't
+ * keep a result from being cached.
+ *
+ * <p>The number of results is bounded by W-TinyLFU: new results enter a small LRU window, and when
+ * they leave it, they are kept only if they were requested more often than the results they would
+ * replace, according to a {@link FrequencySketch}. This keeps popular results cached when many
+ * results are requested only once.
+ *
+ * <p>Hits don't take locks: they are looked up in a {@link ConcurrentHashMap} and recorded in a
+ * lossy buffer, which is applied to the eviction policy under a lock on the next miss.
+ */
+public class CachingMiddleware implements Command.Middleware {
+
+  /** Marks commands whose results can be cached. */
+  public interface Cacheable {}
+
+  private static final int READ_BUFFER_SIZE = 128;
+  private static final int DRAIN_ON_READS = 64;
+
+  private final int maximumSize;
+  private final long ttl;
+  private final long refreshAfter;
+  private final Executor refreshExecutor;
+  private final LongSupplier nanoTime;
+
+  private final ConcurrentMap<Command<?>, Entry> entries = new ConcurrentHashMap<>();
+  // misses being computed, so that invalidations can tell them not to cache their results
+  private final ConcurrentMap<Command<?>, Load> loads = new ConcurrentHashMap<>();
+  private final AtomicReferenceArray<Entry> readBuffer =
+      new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+  private final ReentrantLock evictionLock = new ReentrantLock();
+  private final FrequencySketch sketch;
+  private final AccessOrder window = new AccessOrder();
+  private final AccessOrder probation = new AccessOrder();
+  private final AccessOrder protectedRegion = new AccessOrder();
+  private final int maximumWindowSize;
+  private final int maximumProtectedSize;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  public CachingMiddleware(int maximumSize, Duration ttl) {
+    this(maximumSize, ttl, null, null, System::nanoTime);
+  }
+
+  public CachingMiddleware(
+      int maximumSize, Duration ttl, Duration refreshAfter, Executor refreshExecutor) {
+    this(
+        maximumSize,
+        ttl,
+        checkArgument(refreshAfter, "Refresh after must not be null"),
+        checkArgument(refreshExecutor, "Refresh executor must not be null"),
+        System::nanoTime);
+  }
+
+  CachingMiddleware(
+      int maximumSize,
+      Duration ttl,
+      Duration refreshAfter,
+      Executor refreshExecutor,
+      LongSupplier nanoTime) {
+    checkArgument(maximumSize > 0, "Maximum size must be positive");
+    checkArgument(ttl, "TTL must not be null");
+    checkArgument(!ttl.isNegative() && !ttl.isZero(), "TTL must be positive");
+    checkArgument(
+        refreshAfter == null || refreshAfter.compareTo(ttl) < 0,
+        "Refresh after must be shorter than TTL");
+    this.maximumSize = maximumSize;
+    this.ttl = ttl.toNanos();
+    this.refreshAfter = refreshAfter == null ? Long.MAX_VALUE : refreshAfter.toNanos();
+    this.refreshExecutor = refreshExecutor;
+    this.nanoTime = nanoTime;
+    this.sketch = new FrequencySketch(maximumSize);
+    this.maximumWindowSize = Math.max(1, maximumSize / 100);
+    this.maximumProtectedSize = (maximumSize - maximumWindowSize) * 4 / 5;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <R, C extends Command<R>> R invoke(C command, Next<R> next) {
+    if (!(command instanceof Cacheable)) {
+      return next.invoke();
+    }
+
+    Entry entry = entries.get(command);
+    if (entry != null) {
+      Result result = entry.result;
+      long now = nanoTime.getAsLong();
+      if (now - result.expiresAt < 0) {
+        hits.increment();
+        recordRead(entry);
+        if (now - result.refreshAt >= 0 && entry.refreshing.compareAndSet(false, true)) {
+          refresh(command, entry, next);
+        }
+        return (R) result.value;
+      }
+    }
+
+    misses.increment();
+    Load load =
+        loads.compute(
+            command,
+            (key, current) -> current == null || current.invalidated ? new Load() : current.join());
+    try {
+      R value = next.invoke();
+      put(command, value, load, null);
+      return value;
+    } finally {
+      loads.computeIfPresent(
+          command, (key, current) -> current == load && load.leave() ? null : current);
+    }
+  }
+
+  /** Removes a cached result of a given command. */
+  public void invalidate(Command<?> command) {
+    checkArgument(command, "Command must not be null");
+    evictionLock.lock();
+    try {
+      Load load = loads.get(command);
+      if (load != null) {
+        load.invalidated = true;
+      }
+      Entry entry = entries.remove(command);
+      if (entry != null) {
+        unlink(entry);
+      }
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  /** Removes cached results of all commands of a given class. */
+  public void invalidateAll(Class<? extends Command> commandType) {
+    checkArgument(commandType, "Command type must not be null");
+    evictionLock.lock();
+    try {
+      loads.forEach(
+          (command, load) -> {
+            if (commandType.isInstance(command)) {
+              load.invalidated = true;
+            }
+          });
+      entries
+          .values()
+          .removeIf(
+              entry -> {
+                if (!commandType.isInstance(entry.command)) {
+                  return false;
+                }
+                unlink(entry);
+                return true;
+              });
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  /** Removes all cached results. */
+  public void invalidateAll() {
+    invalidateAll(Command.class);
+  }
+
+  /**
+   * Returns a handler that removes a cached result of the command derived from every notification
+   * of a given class.
+   */
+  public <N extends Notification> Notification.Handler<N> invalidateOn(
+      Class<N> notificationType, Function<? super N, ? extends Command<?>> commandOf) {
+    checkArgument(notificationType, "Notification type must not be null");
+    checkArgument(commandOf, "Command function must not be null");
+    return new Invalidate<>(notificationType, it -> invalidate(commandOf.apply(it)));
+  }
+
+  /**
+   * Returns a handler that removes cached results of all commands of a given class on every
+   * notification of a given class.
+   */
+  public <N extends Notification> Notification.Handler<N> invalidateAllOn(
+      Class<N> notificationType, Class<? extends Command> commandType) {
+    checkArgument(notificationType, "Notification type must not be null");
+    checkArgument(commandType, "Command type must not be null");
+    return new Invalidate<>(notificationType, it -> invalidateAll(commandType));
+  }
+
+  public long hits() {
+    return hits.sum();
+  }
+
+  public long misses() {
+    return misses.sum();
+  }
+
+  public double hitRatio() {
+    long hits = hits();
+    long requests = hits + misses();
+    return requests == 0 ? 1 : (double) hits / requests;
+  }
+
+  /** Returns the number of results evicted to keep the cache within its maximum size. */
+  public long evictions() {
+    return evictions.sum();
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  private void recordRead(Entry entry) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    readBuffer.lazySet(random.nextInt(READ_BUFFER_SIZE), entry);
+    if (random.nextInt(DRAIN_ON_READS) == 0 && evictionLock.tryLock()) {
+      try {
+        drainReadBuffer();
+      } finally {
+        evictionLock.unlock();
+      }
+    }
+  }
+
+  private <R, C extends Command<R>> void refresh(C command, Entry entry, Next<R> next) {
+    try {
+      refreshExecutor.execute(
+          () -> {
+            try {
+              // an invalidation removes the entry, so it is enough to check that it is still cached
+              put(command, next.invoke(), null, entry);
+            } finally {
+              entry.refreshing.set(false);
+            }
+          });
+    } catch (RuntimeException e) {
+      entry.refreshing.set(false);
+    }
+  }
+
+  /**
+   * Caches a result, unless its command was invalidated since it started being computed, or unless
+   * it refreshes an entry that is no longer cached.
+   */
+  private void put(Command<?> command, Object value, Load load, Entry refreshed) {
+    long now = nanoTime.getAsLong();
+    Result result =
+        new Result(
+            value, now + ttl, refreshAfter == Long.MAX_VALUE ? now + ttl : now + refreshAfter);
+    evictionLock.lock();
+    try {
+      drainReadBuffer();
+      sketch.increment(command);
+      Entry entry = entries.get(command);
+      if ((load != null && load.invalidated) || (refreshed != null && entry != refreshed)) {
+        return;
+      }
+      if (entry != null) {
+        entry.result = result;
+        onAccess(entry);
+        return;
+      }
+      entry = new Entry(command, result);
+      entries.put(command, entry);
+      window.addLast(entry);
+      entry.region = window;
+      evict();
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  private void drainReadBuffer() {
+    for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+      Entry entry = readBuffer.getAndSet(i, null);
+      if (entry != null && entry.region != null) {
+        sketch.increment(entry.command);
+        onAccess(entry);
+      }
+    }
+  }
+
+  private void onAccess(Entry entry) {
+    if (entry.region == probation) {
+      probation.remove(entry);
+      protectedRegion.addLast(entry);
+      entry.region = protectedRegion;
+      while (protectedRegion.size > maximumProtectedSize) {
+        Entry demoted = protectedRegion.head;
+        protectedRegion.remove(demoted);
+        probation.addLast(demoted);
+        demoted.region = probation;
+      }
+    } else if (entry.region != null) {
+      entry.region.moveToLast(entry);
+    }
+  }
+
+  private void evict() {
+    while (window.size > maximumWindowSize) {
+      Entry candidate = window.head;
+      window.remove(candidate);
+      probation.addLast(candidate);
+      candidate.region = probation;
+    }
+    while (entries.size() > maximumSize) {
+      Entry candidate = probation.tail;
+      Entry victim = probation.head != null ? probation.head : protectedRegion.head;
+      if (victim == null) {
+        victim = window.head;
+      }
+      if (candidate != null
+          && candidate != victim
+          && sketch.frequency(candidate.command) <= sketch.frequency(victim.command)) {
+        victim = candidate;
+      }
+      entries.remove(victim.command, victim);
+      unlink(victim);
+      evictions.increment();
+    }
+  }
+
+  private static void unlink(Entry entry) {
+    if (entry.region != null) {
+      entry.region.remove(entry);
+      entry.region = null;
+    }
+  }
+
+  private static class Result {
+
+    private final Object value;
+    private final long expiresAt;
+    private final long refreshAt;
+
+    Result(Object value, long expiresAt, long refreshAt) {
+      this.value = value;
+      this.expiresAt = expiresAt;
+      this.refreshAt = refreshAt;
+    }
+  }
+
+  private static class Entry {
+
+    private final Command<?> command;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private volatile Result result;
+
+    // guarded by the eviction lock
+    private AccessOrder region;
+    private Entry prev;
+    private Entry next;
+
+    Entry(Command<?> command, Result result) {
+      this.command = command;
+      this.result = result;
+    }
+  }
+
+  /** Misses of equal commands being computed at once. */
+  private static class Load {
+
+    // guarded by the eviction lock, and volatile to be read while joining
+    private volatile boolean invalidated;
+    // guarded by the loads map
+    private int computing = 1;
+
+    Load join() {
+      computing++;
+      return this;
+    }
+
+    /** Returns true if no other miss computes this load. */
+    boolean leave() {
+      return --computing == 0;
+    }
+  }
+
+  /** A doubly linked list of entries, from least to most recently accessed. */
+  private static class AccessOrder {
+
+    private Entry head;
+    private Entry tail;
+    private int size;
+
+    void addLast(Entry entry) {
+      entry.prev = tail;
+      entry.next = null;
+      if (tail == null) {
+        head = entry;
+      } else {
+        tail.next = entry;
+      }
+      tail = entry;
+      size++;
+    }
+
+    void remove(Entry entry) {
+      if (entry.prev == null) {
+        head = entry.next;
+      } else {
+        entry.prev.next = entry.next;
+      }
+      if (entry.next == null) {
+        tail = entry.prev;
+      } else {
+        entry.next.prev = entry.prev;
+      }
+      entry.prev = null;
+      entry.next = null;
+      size--;
+    }
+
+    void moveToLast(Entry entry) {
+      if (tail != entry) {
+        remove(entry);
+        addLast(entry);
+      }
+    }
+  }
+
+  private static class Invalidate<N extends Notification> implements Notification.Handler<N> {
+
+    private final Class<N> notificationType;
+    private final Consumer<N> invalidation;
+
+    Invalidate(Class<N> notificationType, Consumer<N> invalidation) {
+      this.notificationType = notificationType;
+      this.invalidation = invalidation;
+    }
+
+    @Override
+    public void handle(N notification) {
+      invalidation.accept(notification);
+    }
+
+    @Override
+    public boolean matches(N notification) {
+      return notificationType.isInstance(notification);
+    }
+  }
+}
@@ -0,0 +1,17 @@
+package an.awesome.pipelinr;
+
+public class CircuitBreakerOpenException extends RuntimeException {
+
+  private final String handlerClass;
+
+  public CircuitBreakerOpenException(Class<?> handlerType) {
+    // open circuits must fail fast, so don't fill in the stack trace
+    super(null, null, false, false);
+    this.handlerClass = handlerType.getSimpleName();
+  }
+
+  @Override
+  public String getMessage() {
+    return "Circuit breaker of " + handlerClass + " handler is open";
+  }
+}
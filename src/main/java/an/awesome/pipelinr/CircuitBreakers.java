@@ -0,0 +1,322 @@
+package an.awesome.pipelinr;
+
+import static an.awesome.pipelinr.Preconditions.checkArgument;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Guards command and notification handlers with circuit breakers, one per handler class.
+ *
+ * <pre>
+ *   CircuitBreakers circuitBreakers = new CircuitBreakers(
+ *       0.5, Duration.ofSeconds(1), 0.8, 100, 20, Duration.ofSeconds(30), 5,
+ *       e -&gt; !(e instanceof InsufficientFundsException));
+ *   new Pipelinr().with(circuitBreakers);
+ * </pre>
+ *
+ * <p>A circuit is closed while the handler mostly succeeds. The outcomes of the last {@code
+ * windowSize} calls are kept in a lock-free ring. Once it has at least {@code minimumCalls} calls
+ * and the rate of failed or slow calls reaches its threshold, the circuit opens: calls fail with
+ * {@link CircuitBreakerOpenException} without reaching the handler. After {@code waitInOpenState},
+ * the circuit is half-open and lets {@code halfOpenProbes} calls through. If they succeed, the
+ * circuit closes; otherwise, it opens again. It also opens again if the probes don't complete
+ * within another {@code waitInOpenState}, so a probe that hangs doesn't keep it half-open.
+ *
+ * <p>A call fails if the handler throws an exception that {@code isFailure} accepts. By default,
+ * all exceptions but {@link DeadlineExceededException} are failures, since a deadline of the caller
+ * says nothing about the health of the handler. Other exceptions count as successful calls.
+ *
+ * <p>Handlers of all classes are guarded.
+ */
+public class CircuitBreakers {
+
+  public enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+  }
+
+  private final double failureRateThreshold;
+  private final long slowCallNanos;
+  private final double slowCallRateThreshold;
+  private final int windowSize;
+  private final int minimumCalls;
+  private final long waitInOpenStateNanos;
+  private final int halfOpenProbes;
+  private final Predicate<? super Throwable> isFailure;
+
+  private final ClassValue<CircuitBreaker> circuitBreakers =
+      new ClassValue<CircuitBreaker>() {
+        @Override
+        protected CircuitBreaker computeValue(Class<?> handlerType) {
+          return new CircuitBreaker(handlerType);
+        }
+      };
+
+  /**
+   * Opens circuits once half of at least 20 of the last 100 calls fail, for 30 seconds, then probes
+   * handlers with 5 calls.
+   */
+  public CircuitBreakers() {
+    this(0.5, 100, 20, Duration.ofSeconds(30), 5);
+  }
+
+  /**
+   * Opens circuits once {@code failureRateThreshold} (0 to 1) of at least {@code minimumCalls} of
+   * the last {@code windowSize} calls fail, for {@code waitInOpenState}, then probes handlers with
+   * {@code halfOpenProbes} calls.
+   */
+  public CircuitBreakers(
+      double failureRateThreshold,
+      int windowSize,
+      int minimumCalls,
+      Duration waitInOpenState,
+      int halfOpenProbes) {
+    this(
+        failureRateThreshold,
+        Long.MAX_VALUE,
+        1,
+        windowSize,
+        minimumCalls,
+        waitInOpenState,
+        halfOpenProbes,
+        e -> !(e instanceof DeadlineExceededException));
+  }
+
+  /**
+   * Like {@link #CircuitBreakers(double, int, int, Duration, int)}, but also opens circuits once
+   * {@code slowCallRateThreshold} (0 to 1) of the calls take at least {@code slowCall}, and counts
+   * only exceptions that {@code isFailure} accepts as failures.
+   */
+  public CircuitBreakers(
+      double failureRateThreshold,
+      Duration slowCall,
+      double slowCallRateThreshold,
+      int windowSize,
+      int minimumCalls,
+      Duration waitInOpenState,
+      int halfOpenProbes,
+      Predicate<? super Throwable> isFailure) {
+    this(
+        failureRateThreshold,
+        checkArgument(slowCall, "Slow call duration must not be null").toNanos(),
+        slowCallRateThreshold,
+        windowSize,
+        minimumCalls,
+        waitInOpenState,
+        halfOpenProbes,
+        isFailure);
+  }
+
+  private CircuitBreakers(
+      double failureRateThreshold,
+      long slowCallNanos,
+      double slowCallRateThreshold,
+      int windowSize,
+      int minimumCalls,
+      Duration waitInOpenState,
+      int halfOpenProbes,
+      Predicate<? super Throwable> isFailure) {
+    checkArgument(
+        failureRateThreshold > 0 && failureRateThreshold <= 1,
+        "Failure rate threshold must be greater than 0 and at most 1");
+    checkArgument(
+        slowCallRateThreshold > 0 && slowCallRateThreshold <= 1,
+        "Slow call rate threshold must be greater than 0 and at most 1");
+    checkArgument(windowSize > 0, "Window size must be positive");
+    checkArgument(
+        minimumCalls > 0 && minimumCalls <= windowSize,
+        "Minimum calls must be positive and at most window size");
+    checkArgument(waitInOpenState, "Wait in open state must not be null");
+    checkArgument(halfOpenProbes > 0, "Half-open probes must be positive");
+    checkArgument(isFailure, "Failure predicate must not be null");
+    this.failureRateThreshold = failureRateThreshold;
+    this.slowCallNanos = slowCallNanos;
+    this.slowCallRateThreshold = slowCallRateThreshold;
+    this.windowSize = windowSize;
+    this.minimumCalls = minimumCalls;
+    this.waitInOpenStateNanos = waitInOpenState.toNanos();
+    this.halfOpenProbes = halfOpenProbes;
+    this.isFailure = isFailure;
+  }
+
+  /** Returns the state of the circuit of a given handler class. */
+  public State state(Class<?> handlerType) {
+    return circuitBreakers.get(handlerType).state();
+  }
+
+  CircuitBreaker of(Class<?> handlerType) {
+    return circuitBreakers.get(handlerType);
+  }
+
+  final class CircuitBreaker {
+
+    private final Class<?> handlerType;
+    private final AtomicReference<Circuit> circuit;
+
+    CircuitBreaker(Class<?> handlerType) {
+      this.handlerType = handlerType;
+      this.circuit = new AtomicReference<>(new Closed(windowSize));
+    }
+
+    State state() {
+      Circuit current = circuit.get();
+      if (current instanceof Open && hasWaited(((Open) current).openedAt)) {
+        return State.HALF_OPEN;
+      }
+      if (current instanceof HalfOpen && ((HalfOpen) current).isStuck()) {
+        return State.OPEN;
+      }
+      return current.state();
+    }
+
+    <T> T call(Supplier<T> call) {
+      Circuit permit = acquire();
+      long start = System.nanoTime();
+      Throwable failure = null;
+      try {
+        return call.get();
+      } catch (Throwable e) {
+        failure = e;
+        throw e;
+      } finally {
+        onComplete(permit, System.nanoTime() - start, failure);
+      }
+    }
+
+    /** Returns the circuit that let the call through, or throws if the circuit is open. */
+    Circuit acquire() {
+      while (true) {
+        Circuit current = circuit.get();
+        if (current instanceof Closed) {
+          return current;
+        }
+        if (current instanceof Open) {
+          if (!hasWaited(((Open) current).openedAt)) {
+            throw new CircuitBreakerOpenException(handlerType);
+          }
+          circuit.compareAndSet(current, new HalfOpen(System.nanoTime()));
+          continue;
+        }
+        HalfOpen halfOpen = (HalfOpen) current;
+        if (halfOpen.permits.incrementAndGet() <= halfOpenProbes) {
+          return current;
+        }
+        if (hasWaited(halfOpen.openedAt)) {
+          // probes that didn't complete in time count as failed
+          circuit.compareAndSet(halfOpen, new Open(System.nanoTime()));
+        }
+        throw new CircuitBreakerOpenException(handlerType);
+      }
+    }
+
+    /**
+     * Records an outcome of a call, given the exception it threw, or null. Outcomes of calls let
+     * through by a former circuit are lost.
+     */
+    void onComplete(Circuit permit, long nanos, Throwable failure) {
+      boolean failed = failure != null && isFailure.test(failure);
+      boolean slow = nanos >= slowCallNanos;
+      if (permit instanceof Closed) {
+        Closed closed = (Closed) permit;
+        closed.record(failed, slow);
+        if (closed.shouldOpen()) {
+          circuit.compareAndSet(closed, new Open(System.nanoTime()));
+        }
+      } else if (permit instanceof HalfOpen) {
+        HalfOpen halfOpen = (HalfOpen) permit;
+        if (failed || slow) {
+          circuit.compareAndSet(halfOpen, new Open(System.nanoTime()));
+        } else if (halfOpen.succeeded.incrementAndGet() == halfOpenProbes) {
+          circuit.compareAndSet(halfOpen, new Closed(windowSize));
+        }
+      }
+    }
+  }
+
+  private boolean hasWaited(long since) {
+    return System.nanoTime() - since >= waitInOpenStateNanos;
+  }
+
+  interface Circuit {
+    State state();
+  }
+
+  private final class Closed implements Circuit {
+
+    private static final int RECORDED = 1;
+    private static final int FAILED = 2;
+    private static final int SLOW = 4;
+
+    private final AtomicIntegerArray outcomes;
+    private final AtomicInteger cursor = new AtomicInteger();
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicInteger slowCalls = new AtomicInteger();
+
+    Closed(int windowSize) {
+      this.outcomes = new AtomicIntegerArray(windowSize);
+    }
+
+    @Override
+    public State state() {
+      return State.CLOSED;
+    }
+
+    void record(boolean failed, boolean slow) {
+      int outcome = RECORDED | (failed ? FAILED : 0) | (slow ? SLOW : 0);
+      int index = Math.floorMod(cursor.getAndIncrement(), outcomes.length());
+      int evicted = outcomes.getAndSet(index, outcome);
+      calls.addAndGet(1 - (evicted & RECORDED));
+      failures.addAndGet(((outcome & FAILED) - (evicted & FAILED)) >> 1);
+      slowCalls.addAndGet(((outcome & SLOW) - (evicted & SLOW)) >> 2);
+    }
+
+    boolean shouldOpen() {
+      int calls = this.calls.get();
+      return calls >= minimumCalls
+          && (failures.get() >= failureRateThreshold * calls
+              || slowCalls.get() >= slowCallRateThreshold * calls);
+    }
+  }
+
+  private static final class Open implements Circuit {
+
+    private final long openedAt;
+
+    Open(long openedAt) {
+      this.openedAt = openedAt;
+    }
+
+    @Override
+    public State state() {
+      return State.OPEN;
+    }
+  }
+
+  private final class HalfOpen implements Circuit {
+
+    private final long openedAt;
+    private final AtomicInteger permits = new AtomicInteger();
+    private final AtomicInteger succeeded = new AtomicInteger();
+
+    HalfOpen(long openedAt) {
+      this.openedAt = openedAt;
+    }
+
+    /** Returns true if all probes are let through, but didn't complete in time. */
+    boolean isStuck() {
+      return permits.get() >= halfOpenProbes && hasWaited(openedAt);
+    }
+
+    @Override
+    public State state() {
+      return State.HALF_OPEN;
+    }
+  }
+}
@@ -1,5 +1,9 @@
 package an.awesome.pipelinr;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.stream.Stream;
 
 public interface Command<R> {
@@ -13,8 +17,47 @@ public interface Command<R> {
     R handle(C command);
 
     default boolean matches(C command) {
-      Generic<C> commandType = new Generic<C>(getClass()) {};
-      return commandType.resolve().isAssignableFrom(command.getClass());
+      return HandlerTypes.commandType(getClass()).isAssignableFrom(command.getClass());
+    }
+  }
+
+  /**
+   * A handler that completes commands asynchronously, without blocking the sending thread. Used by
+   * {@link Pipeline#sendAsync(Command)}; when sent synchronously, the handler waits for the result.
+   */
+  interface AsyncHandler<C extends Command<R>, R> extends Handler<C, R> {
+
+    CompletionStage<R> handleAsync(C command);
+
+    @Override
+    default R handle(C command) {
+      try {
+        return handleAsync(command).toCompletableFuture().join();
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        if (e.getCause() instanceof Error) {
+          throw (Error) e.getCause();
+        }
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * A handler that handles a whole batch of commands at once, for example to save all rows of an
+   * import in one round trip. Used by {@link Pipeline#sendAll(java.util.Collection)}; when sent on
+   * its own, a command is handled as a batch of one.
+   */
+  interface BatchHandler<C extends Command<R>, R> extends Handler<C, R> {
+
+    /** Returns results in the order of commands. */
+    List<R> handleAll(List<C> commands);
+
+    @Override
+    default R handle(C command) {
+      return handleAll(Collections.singletonList(command)).get(0);
     }
   }
 
@@ -32,6 +75,24 @@ public interface Command<R> {
     }
   }
 
+  @FunctionalInterface
+  interface AsyncMiddlewares {
+    Stream<AsyncMiddleware> supply();
+  }
+
+  /**
+   * A middleware for {@link Pipeline#sendAsync(Command)}. Its next step returns a stage, so the
+   * middleware can act upon completion without blocking a thread.
+   */
+  @FunctionalInterface
+  interface AsyncMiddleware {
+    <R, C extends Command<R>> CompletionStage<R> invoke(C command, Next<R> next);
+
+    interface Next<T> {
+      CompletionStage<T> invoke();
+    }
+  }
+
   interface Router {
     <C extends Command<R>, R> Handler<C, R> route(C command);
   }
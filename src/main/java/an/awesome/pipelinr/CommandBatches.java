@@ -0,0 +1,128 @@
+package an.awesome.pipelinr;
+
+import static an.awesome.pipelinr.Preconditions.checkArgument;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Dispatches commands in batches, one batch per handler.
+ *
+ * <p>Batch-aware handlers receive their batch in one call, going through middlewares once. Other
+ * handlers receive their commands one by one, each going through middlewares, but without routing
+ * them again. Results are returned in the order of commands.
+ *
+ * <p>Middlewares and metrics see a batch as a single {@link Batch} command, recorded under {@code
+ * Batch.class}, rather than the commands it holds.
+ */
+final class CommandBatches<R, C extends Command<R>> {
+
+  private final List<C> commands;
+  private final Map<Command.Handler<C, R>, List<Integer>> positionsByHandler =
+      new IdentityHashMap<>();
+  private final List<Command.Handler<C, R>> handlers = new ArrayList<>();
+  // what the handler being sent to returned, until a send returns it
+  private Object handled;
+
+  CommandBatches(Collection<C> commands, Command.Router router) {
+    this.commands = new ArrayList<>(commands);
+    for (int position = 0; position < this.commands.size(); position++) {
+      C command = checkArgument(this.commands.get(position), "Command must not be null");
+      Command.Handler<C, R> handler = router.route(command);
+      positionsByHandler
+          .computeIfAbsent(
+              handler,
+              it -> {
+                handlers.add(it);
+                return new ArrayList<>();
+              })
+          .add(position);
+    }
+  }
+
+  List<R> send(CommandChain chain, PipelineMetrics metrics, HandlerCalls calls) {
+    Object[] results = new Object[commands.size()];
+    try {
+      return send(chain, metrics, calls, results);
+    } catch (Throwable e) {
+      // nobody gets the streams of stream commands once the call fails, so nobody closes them
+      if (handled instanceof List) {
+        ((List<?>) handled).forEach(it -> AbstractPipeline.closeStream(it, e));
+      } else {
+        AbstractPipeline.closeStream(handled, e);
+      }
+      for (Object result : results) {
+        AbstractPipeline.closeStream(result, e);
+      }
+      throw e;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<R> send(
+      CommandChain chain, PipelineMetrics metrics, HandlerCalls calls, Object[] results) {
+    for (Command.Handler<C, R> handler : handlers) {
+      List<Integer> positions = positionsByHandler.get(handler);
+      if (handler instanceof Command.BatchHandler) {
+        List<C> batch = new ArrayList<>(positions.size());
+        positions.forEach(position -> batch.add(commands.get(position)));
+        Command.BatchHandler<C, R> batchHandler = (Command.BatchHandler<C, R>) handler;
+        List<R> batchResults =
+            send(
+                metrics,
+                Batch.class,
+                () ->
+                    chain.invoke(
+                        new Batch<>(batch),
+                        () -> handle(calls, handler, () -> batchHandler.handleAll(batch))));
+        if (batchResults.size() != batch.size()) {
+          throw new IllegalStateException(
+              handler.getClass().getSimpleName()
+                  + " must return a result for every command, but returned "
+                  + batchResults.size()
+                  + " result(s) for "
+                  + batch.size()
+                  + " command(s)");
+        }
+        for (int i = 0; i < positions.size(); i++) {
+          results[positions.get(i)] = batchResults.get(i);
+        }
+        handled = null;
+      } else {
+        for (int position : positions) {
+          C command = commands.get(position);
+          results[position] =
+              send(
+                  metrics,
+                  command.getClass(),
+                  () ->
+                      chain.invoke(
+                          command, () -> handle(calls, handler, () -> handler.handle(command))));
+          handled = null;
+        }
+      }
+    }
+    return (List<R>) Arrays.asList(results);
+  }
+
+  private static <T> T send(PipelineMetrics metrics, Class<?> commandType, Supplier<T> send) {
+    return metrics == null
+        ? send.get()
+        : metrics.timer(PipelineMetrics.Kind.COMMAND, commandType).time(send);
+  }
+
+  private <T> T handle(HandlerCalls calls, Object handler, Supplier<T> handle) {
+    Deadline.checkCurrent();
+    T result =
+        calls == null
+            ? handle.get()
+            : calls.call(PipelineMetrics.Kind.COMMAND_HANDLER, handler, handle);
+    handled = result;
+    return result;
+  }
+}
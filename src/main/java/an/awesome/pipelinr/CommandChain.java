@@ -0,0 +1,30 @@
+package an.awesome.pipelinr;
+
+import java.util.stream.Stream;
+
+/**
+ * An immutable, array-backed chain of command middlewares.
+ *
+ * <p>Every invocation walks the array, allocating a single {@link Command.Middleware.Next} per
+ * middleware and nothing when there are no middlewares.
+ */
+final class CommandChain {
+
+  private final Command.Middleware[] middlewares;
+
+  CommandChain(Stream<Command.Middleware> middlewares) {
+    this.middlewares = middlewares.toArray(Command.Middleware[]::new);
+  }
+
+  <R, C extends Command<R>> R invoke(C command, Command.Middleware.Next<R> handler) {
+    return invoke(0, command, handler);
+  }
+
+  private <R, C extends Command<R>> R invoke(
+      int index, C command, Command.Middleware.Next<R> handler) {
+    if (index == middlewares.length) {
+      return handler.invoke();
+    }
+    return middlewares[index].invoke(command, () -> invoke(index + 1, command, handler));
+  }
+}
@@ -0,0 +1,83 @@
+package an.awesome.pipelinr;
+
+/**
+ * An immutable, thread-safe snapshot of a {@link Pipelinr}, created by {@link Pipelinr#build()}.
+ *
+ * <p>Handlers and middlewares are taken once, routed via indexes and walked via arrays, so sending
+ * doesn't call suppliers or build streams.
+ */
+final class CompiledPipeline extends AbstractPipeline {
+
+  private final Command.Router commandRouter;
+  private final Notification.Router notificationRouter;
+  private final CommandChain commandChain;
+  private final AsyncCommandChain asyncCommandChain;
+  private final NotificationChain notificationChain;
+  private final NotificationHandlingStrategy notificationHandlingStrategy;
+  private final PipelineMetrics metrics;
+  private final CircuitBreakers circuitBreakers;
+
+  CompiledPipeline(
+      Command.Router commandRouter,
+      Notification.Router notificationRouter,
+      CommandChain commandChain,
+      AsyncCommandChain asyncCommandChain,
+      NotificationChain notificationChain,
+      NotificationHandlingStrategy notificationHandlingStrategy,
+      PipelineMetrics metrics,
+      CircuitBreakers circuitBreakers) {
+    this.commandRouter = commandRouter;
+    this.notificationRouter = notificationRouter;
+    this.commandChain = commandChain;
+    this.asyncCommandChain = asyncCommandChain;
+    this.notificationChain = notificationChain;
+    this.notificationHandlingStrategy = notificationHandlingStrategy;
+    this.metrics = metrics;
+    this.circuitBreakers = circuitBreakers;
+  }
+
+  @Override
+  Command.Router commandRouter() {
+    return commandRouter;
+  }
+
+  @Override
+  Command.Router batchRouter() {
+    return commandRouter;
+  }
+
+  @Override
+  Notification.Router notificationRouter() {
+    return notificationRouter;
+  }
+
+  @Override
+  CommandChain commandChain() {
+    return commandChain;
+  }
+
+  @Override
+  AsyncCommandChain asyncCommandChain() {
+    return asyncCommandChain;
+  }
+
+  @Override
+  NotificationChain notificationChain() {
+    return notificationChain;
+  }
+
+  @Override
+  NotificationHandlingStrategy notificationHandlingStrategy() {
+    return notificationHandlingStrategy;
+  }
+
+  @Override
+  PipelineMetrics metrics() {
+    return metrics;
+  }
+
+  @Override
+  CircuitBreakers circuitBreakers() {
+    return circuitBreakers;
+  }
+}
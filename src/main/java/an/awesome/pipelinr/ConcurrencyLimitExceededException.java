@@ -0,0 +1,21 @@
+package an.awesome.pipelinr;
+
+public class ConcurrencyLimitExceededException extends RuntimeException {
+
+  private final String commandClass;
+  private final int limit;
+
+  public ConcurrencyLimitExceededException(Command command, int limit) {
+    this.commandClass = command.getClass().getSimpleName();
+    this.limit = limit;
+  }
+
+  @Override
+  public String getMessage() {
+    return "Cannot send "
+        + commandClass
+        + " command, "
+        + limit
+        + " command(s) of this class are already in flight";
+  }
+}
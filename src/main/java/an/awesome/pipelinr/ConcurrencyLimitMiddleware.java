@@ -0,0 +1,194 @@
+package an.awesome.pipelinr;
+
+import static an.awesome.pipelinr.Preconditions.checkArgument;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the number of commands of each class that are handled at once, and adapts the limits to
+ * latency. Commands over the limit of their class fail fast with {@link
+ * ConcurrencyLimitExceededException}, so a slow dependency of one command class can't take all
+ * threads.
+ *
+ * <p>Limits follow a gradient, as in TCP Vegas: each send compares its latency with a long-term
+ * average. While latency stays close to the average, the limit grows by its square root; when
+ * latency rises, the limit shrinks in proportion, down to half per send. Changes are smoothed, and
+ * limits don't grow while less than half of them is in use. A send that times out with {@link
+ * DeadlineExceededException} is a drop, as in AIMD, and cuts the limit by a tenth right away. Other
+ * failed sends release their slot but don't change the limit, since they may well fail fast for
+ * reasons other than load, such as validation. Limits are updated without blocking: a send that
+ * completes while another one updates the limit skips its update.
+ *
+ * <p>{@link Batch}es of {@link Pipeline#sendAll(java.util.Collection)} are not limited, since their
+ * latency grows with their size and would skew the limit of the batch handler's commands.
+ *
+ * <pre>
+ *   new Pipelinr().with(() -&gt; Stream.of(new ConcurrencyLimitMiddleware(20, 1, 200)));
+ * </pre>
+ */
+public class ConcurrencyLimitMiddleware implements Command.Middleware {
+
+  private final int initialLimit;
+  private final int minLimit;
+  private final int maxLimit;
+
+  private final ClassValue<Limiter> limiters =
+      new ClassValue<Limiter>() {
+        @Override
+        protected Limiter computeValue(Class<?> commandType) {
+          return new Limiter(initialLimit, minLimit, maxLimit);
+        }
+      };
+
+  private final LongAdder rejected = new LongAdder();
+
+  public ConcurrencyLimitMiddleware() {
+    this(20, 1, 200);
+  }
+
+  public ConcurrencyLimitMiddleware(int initialLimit, int minLimit, int maxLimit) {
+    checkArgument(minLimit > 0, "Minimum limit must be positive");
+    checkArgument(maxLimit >= minLimit, "Maximum limit must not be less than minimum limit");
+    checkArgument(
+        initialLimit >= minLimit && initialLimit <= maxLimit,
+        "Initial limit must be between minimum and maximum limits");
+    this.initialLimit = initialLimit;
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+  }
+
+  @Override
+  public <R, C extends Command<R>> R invoke(C command, Next<R> next) {
+    if (command instanceof Batch) {
+      return next.invoke();
+    }
+    Limiter limiter = limiters.get(command.getClass());
+    int inFlight = limiter.tryAcquire();
+    if (inFlight < 0) {
+      rejected.increment();
+      throw new ConcurrencyLimitExceededException(command, limiter.limit());
+    }
+
+    long start = System.nanoTime();
+    boolean failed = true;
+    try {
+      R result = next.invoke();
+      failed = false;
+      return result;
+    } catch (DeadlineExceededException e) {
+      limiter.onDrop();
+      throw e;
+    } finally {
+      limiter.release();
+      if (!failed) {
+        limiter.onSample(System.nanoTime() - start, inFlight);
+      }
+    }
+  }
+
+  /** Returns the current limit of a given command class. */
+  public int limit(Class<? extends Command> commandType) {
+    return limiters.get(commandType).limit();
+  }
+
+  /** Returns the number of commands of a given class that are being handled. */
+  public int inFlight(Class<? extends Command> commandType) {
+    return limiters.get(commandType).inFlight.get();
+  }
+
+  /** Returns the number of commands rejected over the limit. */
+  public long rejected() {
+    return rejected.sum();
+  }
+
+  static final class Limiter {
+
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+    private static final int LONG_WINDOW = 600;
+    private static final double BACKOFF = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicBoolean updating = new AtomicBoolean();
+
+    private volatile int limit;
+
+    // guarded by updating
+    private double estimatedLimit;
+    private double longRtt;
+
+    Limiter(int initialLimit, int minLimit, int maxLimit) {
+      this.minLimit = minLimit;
+      this.maxLimit = maxLimit;
+      this.limit = initialLimit;
+      this.estimatedLimit = initialLimit;
+    }
+
+    /** Returns the number of commands in flight including this one, or -1 if over the limit. */
+    int tryAcquire() {
+      while (true) {
+        int current = inFlight.get();
+        if (current >= limit()) {
+          return -1;
+        }
+        if (inFlight.compareAndSet(current, current + 1)) {
+          return current + 1;
+        }
+      }
+    }
+
+    void release() {
+      inFlight.decrementAndGet();
+    }
+
+    void onSample(long rtt, int inFlight) {
+      // a sample is skipped rather than waited for, so completions don't queue up on a lock
+      if (!updating.compareAndSet(false, true)) {
+        return;
+      }
+      try {
+        update(rtt, inFlight);
+      } finally {
+        updating.set(false);
+      }
+    }
+
+    void onDrop() {
+      if (!updating.compareAndSet(false, true)) {
+        return;
+      }
+      try {
+        estimatedLimit = Math.max(minLimit, estimatedLimit * BACKOFF);
+        limit = (int) estimatedLimit;
+      } finally {
+        updating.set(false);
+      }
+    }
+
+    private void update(long rtt, int inFlight) {
+      double shortRtt = Math.max(rtt, 1);
+      longRtt = longRtt == 0 ? shortRtt : longRtt + (shortRtt - longRtt) / LONG_WINDOW;
+      // after a latency spike, let the long-term average catch up quickly
+      if (longRtt / shortRtt > 2) {
+        longRtt *= 0.95;
+      }
+      if (inFlight < estimatedLimit / 2) {
+        return;
+      }
+
+      double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / shortRtt));
+      double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+      newLimit = estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+      estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+      limit = (int) estimatedLimit;
+    }
+
+    int limit() {
+      return limit;
+    }
+  }
+}
@@ -0,0 +1,162 @@
+package an.awesome.pipelinr;
+
+import static an.awesome.pipelinr.Preconditions.checkArgument;
+import static an.awesome.pipelinr.Runnables.runQuietly;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Run notification handlers in a thread pool, conflating notifications with the same key.
+ *
+ * <p>Returns immediately and does not wait for any handlers to finish. Handlers of notifications
+ * with the same key run one notification at a time. A notification that arrives while a predecessor
+ * with the same key is still waiting replaces it, so slow handlers only receive the latest one.
+ * Optionally, notifications wait for a time window before they run, so that all notifications
+ * within the window are conflated into the latest one.
+ *
+ * <p>Notifications with a null key are not conflated.
+ *
+ * <p>Note that you cannot capture any exceptions, except for {@link RejectedExecutionException}
+ * when the thread pool rejects a notification, in which case the notification is dropped.
+ *
+ * <p>A notification replaces only a predecessor that was sent through the same instance, so a
+ * pipeline must return the same instance for every send:
+ *
+ * <pre>
+ *   ConflatingNoWait strategy = new ConflatingNoWait(executor, it -&gt; ((PriceTick) it).symbol());
+ *   new Pipelinr().with(() -&gt; strategy);
+ * </pre>
+ */
+public class ConflatingNoWait implements NotificationHandlingStrategy {
+
+  private final ExecutorService executorService;
+  private final ScheduledExecutorService scheduler;
+  private final long windowNanos;
+  private final Function<? super Notification, ?> keyOf;
+
+  private final ConcurrentMap<Object, Pending> pendingByKey = new ConcurrentHashMap<>();
+  private final LongAdder conflated = new LongAdder();
+
+  public ConflatingNoWait(
+      ExecutorService executorService, Function<? super Notification, ?> keyOf) {
+    this(executorService, null, 0, keyOf);
+  }
+
+  public ConflatingNoWait(
+      ScheduledExecutorService scheduler,
+      Duration window,
+      Function<? super Notification, ?> keyOf) {
+    this(scheduler, scheduler, checkArgument(window, "Window must not be null").toNanos(), keyOf);
+  }
+
+  private ConflatingNoWait(
+      ExecutorService executorService,
+      ScheduledExecutorService scheduler,
+      long windowNanos,
+      Function<? super Notification, ?> keyOf) {
+    checkArgument(executorService, "Executor service must not be null");
+    checkArgument(windowNanos >= 0, "Window must not be negative");
+    checkArgument(keyOf, "Key function must not be null");
+    this.executorService = executorService;
+    this.scheduler = scheduler;
+    this.windowNanos = windowNanos;
+    this.keyOf = keyOf;
+  }
+
+  /** Runs handlers right away, like handlers of a notification with a null key. */
+  @Override
+  public void handle(List<Runnable> runnableNotifications) {
+    executorService.execute(() -> runQuietly(runnableNotifications));
+  }
+
+  @Override
+  public void handle(Notification notification, List<Runnable> runnableNotifications) {
+    Object key = keyOf.apply(notification);
+    if (key == null) {
+      handle(runnableNotifications);
+      return;
+    }
+    boolean[] created = new boolean[1];
+    pendingByKey.compute(
+        key,
+        (it, pending) -> {
+          if (pending == null) {
+            created[0] = true;
+            return new Pending(runnableNotifications);
+          }
+          if (pending.latest != null) {
+            conflated.increment();
+          }
+          pending.latest = runnableNotifications;
+          return pending;
+        });
+    if (created[0]) {
+      schedule(key);
+    }
+  }
+
+  /** Returns the number of notifications replaced by a later one with the same key. */
+  public long conflated() {
+    return conflated.sum();
+  }
+
+  /** Returns the number of keys with notifications that are waiting or running. */
+  public int pendingKeys() {
+    return pendingByKey.size();
+  }
+
+  private void schedule(Object key) {
+    try {
+      if (windowNanos > 0) {
+        scheduler.schedule(() -> run(key), windowNanos, TimeUnit.NANOSECONDS);
+      } else {
+        executorService.execute(() -> run(key));
+      }
+    } catch (RejectedExecutionException e) {
+      // drops the pending notification, so that the next one with this key is scheduled again
+      pendingByKey.remove(key);
+      throw e;
+    }
+  }
+
+  private void run(Object key) {
+    // pending notifications only change inside compute(), under the lock of their key
+    @SuppressWarnings("unchecked")
+    List<Runnable>[] latest = new List[1];
+    pendingByKey.computeIfPresent(
+        key,
+        (it, pending) -> {
+          latest[0] = pending.latest;
+          pending.latest = null;
+          return pending;
+        });
+    try {
+      runQuietly(latest[0]);
+    } finally {
+      // the key stays pending while running, so notifications that arrive meanwhile wait
+      if (pendingByKey.computeIfPresent(
+              key, (it, pending) -> pending.latest == null ? null : pending)
+          != null) {
+        schedule(key);
+      }
+    }
+  }
+
+  private static class Pending {
+
+    private List<Runnable> latest;
+
+    Pending(List<Runnable> latest) {
+      this.latest = latest;
+    }
+  }
+}
@@ -0,0 +1,161 @@
+package an.awesome.pipelinr;
+
+import static an.awesome.pipelinr.Preconditions.checkArgument;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * A point in time after which the caller no longer needs a result.
+ *
+ * <pre>
+ *   pipeline.send(new Ping(), Deadline.after(Duration.ofMillis(50)));
+ * </pre>
+ *
+ * <p>A deadline attached at send time is visible to middlewares, handlers and notification handling
+ * strategies via {@link #current()}, including handlers that strategies run in other threads, and
+ * to commands and notifications sent from them. Work whose deadline has passed is skipped with
+ * {@link DeadlineExceededException}: commands before middlewares and before the handler, and
+ * notification handlers before they run. Strategies that wait for handlers stop waiting once the
+ * deadline passes.
+ */
+public final class Deadline {
+
+  private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+  private final long nanoTime;
+
+  private Deadline(long nanoTime) {
+    this.nanoTime = nanoTime;
+  }
+
+  public static Deadline after(Duration timeout) {
+    checkArgument(timeout, "Timeout must not be null");
+    return new Deadline(System.nanoTime() + timeout.toNanos());
+  }
+
+  /** Returns the deadline of the command or notification being sent by the current thread. */
+  public static Optional<Deadline> current() {
+    return Optional.ofNullable(CURRENT.get());
+  }
+
+  public boolean isExpired() {
+    return remainingNanos() <= 0;
+  }
+
+  /** Returns the time left until the deadline, or zero if it has passed. */
+  public Duration remaining() {
+    return Duration.ofNanos(Math.max(0, remainingNanos()));
+  }
+
+  /** Throws {@link DeadlineExceededException} if the deadline has passed. */
+  public void checkNotExpired() {
+    if (isExpired()) {
+      throw new DeadlineExceededException();
+    }
+  }
+
+  private long remainingNanos() {
+    return nanoTime - System.nanoTime();
+  }
+
+  /** Runs work with this deadline, or with the current deadline if it is earlier. */
+  <T> T attach(Supplier<T> work) {
+    Deadline previous = CURRENT.get();
+    CURRENT.set(previous != null && previous.nanoTime - nanoTime < 0 ? previous : this);
+    try {
+      return work.get();
+    } finally {
+      if (previous == null) {
+        CURRENT.remove();
+      } else {
+        CURRENT.set(previous);
+      }
+    }
+  }
+
+  /** Returns nanoseconds left until the current deadline, or {@link Long#MAX_VALUE} if none. */
+  static long remainingNanosOfCurrent() {
+    Deadline current = CURRENT.get();
+    return current == null ? Long.MAX_VALUE : Math.max(0, current.remainingNanos());
+  }
+
+  /** Throws {@link DeadlineExceededException} if the current deadline has passed. */
+  static void checkCurrent() {
+    Deadline current = CURRENT.get();
+    if (current != null) {
+      current.checkNotExpired();
+    }
+  }
+
+  /** Returns a runnable that runs with the current deadline, skipping work if it has passed. */
+  static Runnable propagate(Runnable runnable) {
+    Deadline current = CURRENT.get();
+    if (current == null) {
+      return runnable;
+    }
+    return () ->
+        current.attach(
+            () -> {
+              current.checkNotExpired();
+              runnable.run();
+              return null;
+            });
+  }
+
+  /** Returns a supplier that runs with the current deadline, skipping work if it has passed. */
+  static <T> Supplier<T> propagate(Supplier<T> supplier) {
+    Deadline current = CURRENT.get();
+    if (current == null) {
+      return supplier;
+    }
+    return () ->
+        current.attach(
+            () -> {
+              current.checkNotExpired();
+              return supplier.get();
+            });
+  }
+
+  /**
+   * Waits for a future like {@link CompletableFuture#join()}, but no longer than the current
+   * deadline.
+   */
+  static void join(CompletableFuture<?> future) {
+    Deadline current = CURRENT.get();
+    if (current == null) {
+      future.join();
+      return;
+    }
+    try {
+      future.get(current.remainingNanos(), NANOSECONDS);
+    } catch (TimeoutException e) {
+      throw new DeadlineExceededException();
+    } catch (ExecutionException e) {
+      throw new CompletionException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CompletionException(e);
+    }
+  }
+
+  /**
+   * Waits for a latch to count down, but no longer than the current deadline. Returns false if the
+   * deadline has passed first.
+   */
+  static boolean await(CountDownLatch latch) throws InterruptedException {
+    Deadline current = CURRENT.get();
+    if (current == null) {
+      latch.await();
+      return true;
+    }
+    return latch.await(current.remainingNanos(), NANOSECONDS);
+  }
+}
@@ -0,0 +1,9 @@
+package an.awesome.pipelinr;
+
+public class DeadlineExceededException extends RuntimeException {
+
+  @Override
+  public String getMessage() {
+    return "Deadline exceeded";
+  }
+}
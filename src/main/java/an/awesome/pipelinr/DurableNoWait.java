@@ -0,0 +1,577 @@
+package an.awesome.pipelinr;
+
+import static an.awesome.pipelinr.Preconditions.checkArgument;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Run notification handlers in a thread pool, after writing the notification to a local append-only
+ * log, so that notifications survive a crash or a redeploy.
+ *
+ * <p>Returns once the notification is written, and does not wait for any handlers to finish. With
+ * {@link Sync#GROUP}, the default, also waits until the log is forced to disk. Concurrent sends
+ * share a single force.
+ *
+ * <p>Once all handlers of a notification are finished, the notification is acknowledged in the log.
+ * If a handler throws, the other handlers still run, and the notification stays unacknowledged,
+ * unless all failed handlers threw {@link DeadlineExceededException}, since the sender has given up
+ * on the notification. Unacknowledged notifications from previous runs are sent again with {@link
+ * #replay(Pipeline)}, so handlers must tolerate receiving a notification more than once.
+ * Acknowledgements are forced to disk along with the next notification sent with {@link
+ * Sync#GROUP}, and on {@link #close()}, so on a crash of the machine a handled notification may be
+ * replayed.
+ *
+ * <p>The log is a directory of memory-mapped segments of {@code segmentSize} bytes. A segment is
+ * unmapped and deleted once all of its notifications are acknowledged and a new segment is started.
+ * If it cannot be deleted, it is deleted on the next start. Files in the directory whose names are
+ * not segment names are left alone.
+ *
+ * <p>Handlers passed to {@link #handle(List)} come without a notification to write, so they run in
+ * the thread pool, and are waited for on {@link #close()}, but are not replayed.
+ *
+ * <p>Two instances in the same directory would overwrite each other's segments, so create a single
+ * instance per directory, and replay it once the pipeline is built:
+ *
+ * <pre>
+ *   DurableNoWait strategy = new DurableNoWait(directory, Serializer.javaSerialization(), executor);
+ *   Pipeline pipeline = new Pipelinr().with(() -&gt; strategy);
+ *   strategy.replay(pipeline);
+ * </pre>
+ */
+public class DurableNoWait implements NotificationHandlingStrategy, Closeable {
+
+  public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+  /** Converts notifications to bytes and back. */
+  public interface Serializer {
+
+    byte[] serialize(Notification notification);
+
+    Notification deserialize(byte[] bytes);
+
+    /** Returns a serializer for notifications that implement {@link java.io.Serializable}. */
+    static Serializer javaSerialization() {
+      return new Serializer() {
+        @Override
+        public byte[] serialize(Notification notification) {
+          ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+          try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(notification);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+          return bytes.toByteArray();
+        }
+
+        @Override
+        public Notification deserialize(byte[] bytes) {
+          try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return (Notification) in.readObject();
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+          }
+        }
+      };
+    }
+  }
+
+  public enum Sync {
+    /**
+     * Returns once the notification is written to memory. It survives a crash of the process, but
+     * not of the machine, until the operating system writes it to disk.
+     */
+    NEVER,
+    /** Returns once the notification is forced to disk. Concurrent sends share a single force. */
+    GROUP
+  }
+
+  // a record is [payload length][payload CRC32][acknowledged][payload]
+  private static final int HEADER_SIZE = 12;
+  private static final int ACKNOWLEDGED = 8;
+  private static final Pattern SEGMENT_NAME = Pattern.compile("\\d{20}\\.log");
+
+  private final Path directory;
+  private final int segmentSize;
+  private final Sync sync;
+  private final Serializer serializer;
+  private final ExecutorService executorService;
+
+  private static final Consumer<MappedByteBuffer> UNMAP = unmapper();
+
+  private final List<Record> recovered = new ArrayList<>();
+  private final Set<Segment> mapped = ConcurrentHashMap.newKeySet();
+  // segments with acknowledgements that are not forced yet
+  private final Set<Segment> acknowledged = ConcurrentHashMap.newKeySet();
+  private final AtomicInteger segments = new AtomicInteger();
+  private final LongAdder pending = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private final LongAdder expired = new LongAdder();
+
+  // guarded by this
+  private Segment current;
+  private long appended;
+  private int inFlight;
+  private boolean closed;
+
+  private final Object syncLock = new Object();
+  private long synced;
+  private boolean syncing;
+
+  public DurableNoWait(Path directory, Serializer serializer, ExecutorService executorService) {
+    this(directory, DEFAULT_SEGMENT_SIZE, Sync.GROUP, serializer, executorService);
+  }
+
+  public DurableNoWait(
+      Path directory,
+      int segmentSize,
+      Sync sync,
+      Serializer serializer,
+      ExecutorService executorService) {
+    checkArgument(directory, "Directory must not be null");
+    checkArgument(segmentSize > HEADER_SIZE, "Segment size must be greater than " + HEADER_SIZE);
+    checkArgument(sync, "Sync must not be null");
+    checkArgument(serializer, "Serializer must not be null");
+    checkArgument(executorService, "Executor service must not be null");
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    this.sync = sync;
+    this.serializer = serializer;
+    this.executorService = executorService;
+    this.current = new Segment(recover() + 1);
+  }
+
+  /**
+   * Runs handlers in the thread pool like any other notification, except that there is nothing to
+   * write to the log, so they are not replayed after a crash.
+   */
+  @Override
+  public void handle(List<Runnable> runnableNotifications) {
+    begin();
+    try {
+      execute(null, runnableNotifications);
+    } catch (RuntimeException | Error e) {
+      finished();
+      throw e;
+    }
+  }
+
+  @Override
+  public void handle(Notification notification, List<Runnable> runnableNotifications) {
+    Record record = append(serializer.serialize(notification));
+    try {
+      if (sync == Sync.GROUP) {
+        awaitSync(record.position);
+      }
+      execute(record, runnableNotifications);
+    } catch (RuntimeException | Error e) {
+      // stays unacknowledged and is replayed on restart
+      finished();
+      throw e;
+    }
+  }
+
+  /**
+   * Sends notifications left unacknowledged by previous runs through a given pipeline, and
+   * acknowledges them once sent. Returns the number of replayed notifications.
+   */
+  public int replay(Pipeline pipeline) {
+    checkArgument(pipeline, "Pipeline must not be null");
+    List<Record> records;
+    synchronized (recovered) {
+      records = new ArrayList<>(recovered);
+      recovered.clear();
+    }
+    for (Record record : records) {
+      begin();
+      try {
+        pipeline.send(serializer.deserialize(record.payload()));
+        record.acknowledge();
+      } finally {
+        finished();
+      }
+    }
+    return records.size();
+  }
+
+  /** Returns the number of notifications in the log that are not acknowledged yet. */
+  public long pending() {
+    return pending.sum();
+  }
+
+  /** Returns the number of notifications left unacknowledged because a handler threw. */
+  public long failed() {
+    return failed.sum();
+  }
+
+  /** Returns the number of notifications acknowledged because their deadline had passed. */
+  public long expired() {
+    return expired.sum();
+  }
+
+  /** Returns the number of segments in the log. */
+  public int segments() {
+    return segments.get();
+  }
+
+  /**
+   * Stops accepting notifications, waits until handlers of sent notifications finish, then forces
+   * the log to disk and unmaps its segments.
+   */
+  @Override
+  public void close() {
+    Segment segment;
+    synchronized (this) {
+      closed = true;
+      while (inFlight > 0) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IllegalStateException("Interrupted while waiting for handlers to finish", e);
+        }
+      }
+      segment = current;
+    }
+    forceAcknowledged();
+    segment.force();
+    mapped.forEach(Segment::unmap);
+  }
+
+  private void execute(Record record, List<Runnable> runnableNotifications) {
+    executorService.execute(
+        () -> {
+          try {
+            run(record, runnableNotifications);
+          } finally {
+            finished();
+          }
+        });
+  }
+
+  /** Runs handlers, and acknowledges the record, if any, unless a handler failed. */
+  private void run(Record record, List<Runnable> runnableNotifications) {
+    boolean anyFailed = false;
+    boolean anyExpired = false;
+    // a failing handler doesn't keep the others from running
+    for (Runnable runnable : runnableNotifications) {
+      try {
+        runnable.run();
+      } catch (DeadlineExceededException e) {
+        anyExpired = true;
+      } catch (RuntimeException e) {
+        anyFailed = true;
+      }
+    }
+    if (anyFailed) {
+      // stays unacknowledged and is replayed on restart
+      failed.increment();
+      return;
+    }
+    if (anyExpired) {
+      // the sender has given up, so replaying would only fail again
+      expired.increment();
+    }
+    if (record != null) {
+      record.acknowledge();
+    }
+  }
+
+  private synchronized void begin() {
+    if (closed) {
+      throw new IllegalStateException("Log is closed");
+    }
+    inFlight++;
+  }
+
+  private synchronized void finished() {
+    if (--inFlight == 0) {
+      notifyAll();
+    }
+  }
+
+  private synchronized Record append(byte[] payload) {
+    int size = HEADER_SIZE + payload.length;
+    checkArgument(size <= segmentSize, "Notification does not fit into a segment");
+    begin();
+    if (current.position + size > segmentSize) {
+      Segment full = current;
+      try {
+        full.force();
+        current = new Segment(full.index + 1);
+      } catch (RuntimeException | Error e) {
+        // the notification isn't written, and the next one tries to roll the segment again
+        finished();
+        throw e;
+      }
+      full.release();
+    }
+    Segment segment = current;
+    int position = segment.position;
+    CRC32 crc = new CRC32();
+    crc.update(payload);
+    segment.buffer.putInt(position + 4, (int) crc.getValue());
+    segment.buffer.putInt(position + ACKNOWLEDGED, 0);
+    segment.buffer.position(position + HEADER_SIZE);
+    segment.buffer.put(payload);
+    // the length goes last, so that a partially written record reads as the end of the segment
+    segment.buffer.putInt(position, payload.length);
+    segment.position = position + size;
+    segment.unacknowledged.incrementAndGet();
+    pending.increment();
+    return new Record(segment, position, ++appended);
+  }
+
+  private void awaitSync(long position) {
+    synchronized (syncLock) {
+      while (synced < position) {
+        if (!syncing) {
+          syncing = true;
+          break;
+        }
+        waitForSync();
+      }
+      if (synced >= position) {
+        return;
+      }
+    }
+    // this thread forces the log on behalf of all threads that wait meanwhile
+    long target;
+    Segment segment;
+    synchronized (this) {
+      target = appended;
+      segment = current;
+    }
+    try {
+      forceAcknowledged();
+      // full segments are forced when rolled, so only the current one can hold unforced records
+      segment.force();
+    } finally {
+      synchronized (syncLock) {
+        synced = Math.max(synced, target);
+        syncing = false;
+        syncLock.notifyAll();
+      }
+    }
+  }
+
+  private void waitForSync() {
+    try {
+      syncLock.wait();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for the log to be forced", e);
+    }
+  }
+
+  private void forceAcknowledged() {
+    for (Segment segment : acknowledged) {
+      acknowledged.remove(segment);
+      segment.force();
+    }
+  }
+
+  /** Collects unacknowledged records of previous runs and returns the index of the last segment. */
+  private long recover() {
+    TreeMap<Long, Path> files = new TreeMap<>();
+    try {
+      Files.createDirectories(directory);
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.log")) {
+        for (Path file : stream) {
+          String name = file.getFileName().toString();
+          // other files in the directory are none of the log's business
+          if (!SEGMENT_NAME.matcher(name).matches()) {
+            continue;
+          }
+          files.put(Long.parseLong(name.substring(0, name.length() - 4)), file);
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    files.forEach(
+        (index, file) -> {
+          Segment segment = new Segment(index);
+          segment.recover();
+          segment.release();
+        });
+    return files.isEmpty() ? 0 : files.lastKey();
+  }
+
+  private class Segment {
+
+    private final long index;
+    private final Path file;
+    private final MappedByteBuffer buffer;
+    // records that are not acknowledged yet, plus one while the segment is written to
+    private final AtomicInteger unacknowledged = new AtomicInteger(1);
+    private int position;
+    // guarded by this, since touching an unmapped buffer crashes the JVM
+    private boolean unmapped;
+
+    Segment(long index) {
+      this.index = index;
+      this.file = directory.resolve(String.format("%020d.log", index));
+      try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+        if (raf.length() < segmentSize) {
+          raf.setLength(segmentSize);
+        }
+        this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      mapped.add(this);
+      segments.incrementAndGet();
+    }
+
+    void recover() {
+      while (position + HEADER_SIZE <= buffer.capacity()) {
+        int length = buffer.getInt(position);
+        if (length <= 0 || position + HEADER_SIZE + length > buffer.capacity()) {
+          return;
+        }
+        Record record = new Record(this, position, 0);
+        CRC32 crc = new CRC32();
+        crc.update(record.payload());
+        if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+          // torn by a crash before the segment was forced
+          return;
+        }
+        if (buffer.getInt(position + ACKNOWLEDGED) == 0) {
+          unacknowledged.incrementAndGet();
+          pending.increment();
+          recovered.add(record);
+        }
+        position += HEADER_SIZE + length;
+      }
+    }
+
+    synchronized void force() {
+      if (!unmapped) {
+        buffer.force();
+      }
+    }
+
+    synchronized void acknowledge(int offset) {
+      if (!unmapped) {
+        buffer.putInt(offset + ACKNOWLEDGED, 1);
+      }
+    }
+
+    synchronized void unmap() {
+      if (!unmapped) {
+        unmapped = true;
+        mapped.remove(this);
+        acknowledged.remove(this);
+        UNMAP.accept(buffer);
+      }
+    }
+
+    void release() {
+      if (unacknowledged.decrementAndGet() == 0) {
+        segments.decrementAndGet();
+        // unmapped first, since some systems don't delete files that are mapped
+        unmap();
+        try {
+          Files.deleteIfExists(file);
+        } catch (IOException e) {
+          // all its records are acknowledged, so the next start deletes it
+        }
+      }
+    }
+  }
+
+  private class Record {
+
+    private final Segment segment;
+    private final int offset;
+    private final long position;
+
+    Record(Segment segment, int offset, long position) {
+      this.segment = segment;
+      this.offset = offset;
+      this.position = position;
+    }
+
+    byte[] payload() {
+      ByteBuffer buffer = segment.buffer.duplicate();
+      byte[] payload = new byte[buffer.getInt(offset)];
+      buffer.position(offset + HEADER_SIZE);
+      buffer.get(payload);
+      return payload;
+    }
+
+    void acknowledge() {
+      segment.acknowledge(offset);
+      acknowledged.add(segment);
+      pending.decrement();
+      segment.release();
+    }
+  }
+
+  /**
+   * Returns a function that unmaps a buffer right away, rather than when it is garbage collected.
+   * There is no public API for that, so it falls back to the garbage collector if neither the Java
+   * 9+ nor the Java 8 internal API is accessible.
+   */
+  private static Consumer<MappedByteBuffer> unmapper() {
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      Object unsafe = theUnsafe.get(null);
+      return buffer -> invokeQuietly(invokeCleaner, unsafe, buffer);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      // Java 8
+    }
+    try {
+      Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+      Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+      return buffer -> {
+        try {
+          invokeQuietly(clean, cleaner.invoke(buffer));
+        } catch (ReflectiveOperationException e) {
+          // unmapped when garbage collected
+        }
+      };
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      return buffer -> {};
+    }
+  }
+
+  private static void invokeQuietly(Method method, Object target, Object... arguments) {
+    try {
+      method.invoke(target, arguments);
+    } catch (ReflectiveOperationException e) {
+      // unmapped when garbage collected
+    }
+  }
+}
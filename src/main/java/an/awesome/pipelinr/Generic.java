@@ -5,7 +5,9 @@ import java.lang.reflect.Type;
 import java.lang.reflect.TypeVariable;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Resolves generic types (like &lt;C&gt; or List&lt;R&gt;) into concrete runtime types in the
@@ -21,10 +23,33 @@ import java.util.concurrent.ConcurrentHashMap;
  * <p>Resolution happens lazily, upon resolve() invocation, by traversing the class hierarchy via
  * reflection. Since it's a relatively heavy operation, it's performed only once; subsequent calls
  * return the cached result.
+ *
+ * <p>Resolved types are cached per context class in a {@link ClassValue}, so cache reads are
+ * lock-free and entries are released together with the class (and its class loader). Each class
+ * caches at most {@value #MAX_CACHED_PER_CONTEXT} resolutions, and only of types that its class
+ * loader can see, so a cached type never pins a child class loader. Other resolutions are not
+ * cached. See {@link #cacheStats()} for cache size and hit/miss statistics.
  */
 public abstract class Generic<C> {
 
-  private static Map<Generic<?>, Type> RESOLVED_GENERICS = new ConcurrentHashMap<>();
+  static final int MAX_CACHED_PER_CONTEXT = 32;
+
+  private static final ClassValue<Map<Type, Type>> RESOLVED_GENERICS =
+      new ClassValue<Map<Type, Type>>() {
+        @Override
+        protected Map<Type, Type> computeValue(Class<?> context) {
+          synchronized (CONTEXTS) {
+            CONTEXTS.put(context, Boolean.TRUE);
+          }
+          return new ConcurrentHashMap<>();
+        }
+      };
+
+  // Weakly tracks context classes with cached resolutions, so that cache size can be reported.
+  private static final Map<Class<?>, Boolean> CONTEXTS = new WeakHashMap<>();
+
+  private static final LongAdder HITS = new LongAdder();
+  private static final LongAdder MISSES = new LongAdder();
 
   private final Class<?> context;
   private final Type diamond;
@@ -44,13 +69,59 @@ public abstract class Generic<C> {
 
   @SuppressWarnings("unchecked")
   public Class<? super C> resolve() {
-    return (Class<? super C>)
-        RESOLVED_GENERICS.computeIfAbsent(
-            this,
-            it -> {
-              Mappings mappings = new Scanner().scan(context);
-              return mappings.get(diamond);
-            });
+    Map<Type, Type> resolved = RESOLVED_GENERICS.get(context);
+    Type type = resolved.get(diamond);
+    if (type != null) {
+      HITS.increment();
+      return (Class<? super C>) type;
+    }
+    MISSES.increment();
+    type = resolve(context, diamond);
+    if (resolved.size() < MAX_CACHED_PER_CONTEXT
+        && isVisibleFrom(context, getClass())
+        && isVisibleFrom(context, declaringClassOf(type))) {
+      resolved.putIfAbsent(diamond, type);
+    }
+    return (Class<? super C>) type;
+  }
+
+  /** Returns true if a class is loaded by the class loader of a context or one of its parents. */
+  private static boolean isVisibleFrom(Class<?> context, Class<?> clazz) {
+    if (clazz == null) {
+      return false;
+    }
+    ClassLoader loader = clazz.getClassLoader();
+    if (loader == null) {
+      return true;
+    }
+    for (ClassLoader it = context.getClassLoader(); it != null; it = it.getParent()) {
+      if (it == loader) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static Class<?> declaringClassOf(Type type) {
+    if (type instanceof Class) {
+      return (Class<?>) type;
+    }
+    if (type instanceof TypeVariable
+        && ((TypeVariable<?>) type).getGenericDeclaration() instanceof Class) {
+      return (Class<?>) ((TypeVariable<?>) type).getGenericDeclaration();
+    }
+    return null;
+  }
+
+  /** Returns a snapshot of the resolution cache statistics. */
+  public static CacheStats cacheStats() {
+    long size = 0;
+    synchronized (CONTEXTS) {
+      for (Class<?> context : CONTEXTS.keySet()) {
+        size += RESOLVED_GENERICS.get(context).size();
+      }
+    }
+    return new CacheStats(size, HITS.sum(), MISSES.sum());
   }
 
   @Override
@@ -66,9 +137,43 @@ public abstract class Generic<C> {
     return 31 * context.hashCode() + diamond.hashCode();
   }
 
-  // for testing
-  static void setCache(ConcurrentHashMap<Generic<?>, Type> cache) {
-    Generic.RESOLVED_GENERICS = cache;
+  /**
+   * Resolves a type (like a type variable) in the context of a given class, bypassing the cache.
+   */
+  static Type resolve(Class<?> context, Type type) {
+    return new Scanner().scan(context).get(type);
+  }
+
+  /** Resolution cache statistics. Hits and misses are counted since the class was loaded. */
+  public static final class CacheStats {
+
+    private final long size;
+    private final long hits;
+    private final long misses;
+
+    CacheStats(long size, long hits, long misses) {
+      this.size = size;
+      this.hits = hits;
+      this.misses = misses;
+    }
+
+    /** Number of cached resolutions of classes that haven't been unloaded yet. */
+    public long size() {
+      return size;
+    }
+
+    public long hits() {
+      return hits;
+    }
+
+    public long misses() {
+      return misses;
+    }
+
+    @Override
+    public String toString() {
+      return "CacheStats{size=" + size + ", hits=" + hits + ", misses=" + misses + "}";
+    }
   }
 
   /** Walks the class hierarchy, collecting mappings between type variables and actual types. */
@@ -0,0 +1,80 @@
+package an.awesome.pipelinr;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+/** Calls handlers, recording metrics and guarding them with circuit breakers, if configured. */
+final class HandlerCalls {
+
+  private final PipelineMetrics metrics;
+  private final CircuitBreakers circuitBreakers;
+
+  private HandlerCalls(PipelineMetrics metrics, CircuitBreakers circuitBreakers) {
+    this.metrics = metrics;
+    this.circuitBreakers = circuitBreakers;
+  }
+
+  /** Returns null if there is nothing to do besides calling handlers. */
+  static HandlerCalls of(PipelineMetrics metrics, CircuitBreakers circuitBreakers) {
+    return metrics == null && circuitBreakers == null
+        ? null
+        : new HandlerCalls(metrics, circuitBreakers);
+  }
+
+  <T> T call(PipelineMetrics.Kind kind, Object handler, Supplier<T> call) {
+    Supplier<T> guarded =
+        circuitBreakers == null ? call : () -> circuitBreakers.of(handler.getClass()).call(call);
+    return metrics == null ? guarded.get() : metrics.timer(kind, handler.getClass()).time(guarded);
+  }
+
+  void run(PipelineMetrics.Kind kind, Object handler, Runnable run) {
+    call(
+        kind,
+        handler,
+        () -> {
+          run.run();
+          return null;
+        });
+  }
+
+  <T> CompletionStage<T> callAsync(Object handler, Supplier<CompletionStage<T>> call) {
+    CircuitBreakers.CircuitBreaker circuitBreaker =
+        circuitBreakers == null ? null : circuitBreakers.of(handler.getClass());
+    PipelineMetrics.Timer timer =
+        metrics == null
+            ? null
+            : metrics.timer(PipelineMetrics.Kind.COMMAND_HANDLER, handler.getClass());
+    long start = System.nanoTime();
+    CircuitBreakers.Circuit permit = null;
+    CompletionStage<T> result;
+    try {
+      permit = circuitBreaker == null ? null : circuitBreaker.acquire();
+      result = call.get();
+    } catch (RuntimeException | Error e) {
+      long nanos = System.nanoTime() - start;
+      if (permit != null) {
+        circuitBreaker.onComplete(permit, nanos, e);
+      }
+      if (timer != null) {
+        timer.record(nanos, true);
+      }
+      CompletableFuture<T> failed = new CompletableFuture<>();
+      failed.completeExceptionally(e);
+      return failed;
+    }
+    CircuitBreakers.Circuit acquired = permit;
+    return result.whenComplete(
+        (it, e) -> {
+          long nanos = System.nanoTime() - start;
+          if (acquired != null) {
+            circuitBreaker.onComplete(
+                acquired, nanos, e instanceof CompletionException ? e.getCause() : e);
+          }
+          if (timer != null) {
+            timer.record(nanos, e != null);
+          }
+        });
+  }
+}
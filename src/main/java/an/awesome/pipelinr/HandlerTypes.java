@@ -0,0 +1,76 @@
+package an.awesome.pipelinr;
+
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+
+/**
+ * Resolves, once per handler class, the command (or notification) type that a handler handles.
+ *
+ * <p>Resolution walks the class hierarchy via reflection, so its result is cached in a {@link
+ * ClassValue}. Subsequent lookups are lock-free and don't allocate, which keeps the default
+ * matches() down to a single isAssignableFrom() check.
+ *
+ * <p>A handler can be matched by its type alone if it inherits the default matches() and its type
+ * resolves to a concrete class. Handlers that override matches() select commands dynamically, so
+ * their result cannot be decided upfront.
+ */
+final class HandlerTypes {
+
+  private static final TypeVariable<?> COMMAND = Command.Handler.class.getTypeParameters()[0];
+  private static final TypeVariable<?> NOTIFICATION =
+      Notification.Handler.class.getTypeParameters()[0];
+
+  private static final ClassValue<Type> COMMAND_TYPES = resolving(COMMAND);
+  private static final ClassValue<Type> NOTIFICATION_TYPES = resolving(NOTIFICATION);
+
+  private HandlerTypes() {}
+
+  /** Returns the command type of a handler. */
+  static Class<?> commandType(Class<?> handlerClass) {
+    return (Class<?>) COMMAND_TYPES.get(handlerClass);
+  }
+
+  /** Returns the notification type of a handler. */
+  static Class<?> notificationType(Class<?> handlerClass) {
+    return (Class<?>) NOTIFICATION_TYPES.get(handlerClass);
+  }
+
+  /** Returns the command type of a handler, or null if the handler must be asked via matches(). */
+  static Class<?> commandTypeOf(Class<?> handlerClass) {
+    return matchesByType(handlerClass, Command.Handler.class, Command.class)
+        ? classOrNull(COMMAND_TYPES.get(handlerClass))
+        : null;
+  }
+
+  /**
+   * Returns the notification type of a handler, or null if the handler must be asked via matches().
+   */
+  static Class<?> notificationTypeOf(Class<?> handlerClass) {
+    return matchesByType(handlerClass, Notification.Handler.class, Notification.class)
+        ? classOrNull(NOTIFICATION_TYPES.get(handlerClass))
+        : null;
+  }
+
+  private static boolean matchesByType(
+      Class<?> handlerClass, Class<?> handlerInterface, Class<?> argumentType) {
+    try {
+      return handlerClass.getMethod("matches", argumentType).getDeclaringClass()
+          == handlerInterface;
+    } catch (NoSuchMethodException e) {
+      return false;
+    }
+  }
+
+  private static Class<?> classOrNull(Type type) {
+    return type instanceof Class ? (Class<?>) type : null;
+  }
+
+  private static ClassValue<Type> resolving(TypeVariable<?> variable) {
+    return new ClassValue<Type>() {
+      @Override
+      protected Type computeValue(Class<?> handlerClass) {
+        return Generic.resolve(handlerClass, variable);
+      }
+    };
+  }
+}
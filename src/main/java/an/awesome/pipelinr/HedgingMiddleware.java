@@ -0,0 +1,193 @@
+package an.awesome.pipelinr;
+
+import static an.awesome.pipelinr.Preconditions.checkArgument;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Cuts tail latency of {@link Idempotent} commands: if a command isn't handled within a threshold,
+ * sends it once more, takes whichever result comes first and cancels the other attempt.
+ *
+ * <pre>
+ *   // hedge after a fixed delay
+ *   new HedgingMiddleware(scheduler, Duration.ofMillis(50));
+ *   // hedge after the 95th percentile of observed latency of each command class
+ *   new HedgingMiddleware(scheduler, 95, Duration.ofMillis(50));
+ * </pre>
+ *
+ * <p>Both attempts run in the executor, and the caller returns as soon as either of them finishes,
+ * so a slow attempt that doesn't stop on interrupt, such as a blocking socket read, doesn't hold
+ * the caller up. The executor must therefore have at least two threads per concurrent send.
+ * Attempts see the current {@link Deadline}, but not other thread-local context of the caller. The
+ * second attempt starts once the threshold passes, unless the race is over by then. A failed
+ * attempt doesn't end a race while the other attempt is running. Losers are cancelled with an
+ * interrupt. Other commands go straight through.
+ *
+ * <p>With a percentile, the threshold of each command class follows the latency of successful sends
+ * as the caller observes it, and it is {@code initialThreshold} until 100 of them are observed.
+ */
+public class HedgingMiddleware implements Command.Middleware {
+
+  /** Marks commands that are safe to handle more than once. */
+  public interface Idempotent {}
+
+  private static final int MINIMUM_SAMPLES = 100;
+  private static final int RECOMPUTE_EVERY = 64;
+
+  private final ScheduledExecutorService scheduler;
+  private final double percentile;
+  private final long initialThreshold;
+
+  private final ClassValue<Latency> latencies =
+      new ClassValue<Latency>() {
+        @Override
+        protected Latency computeValue(Class<?> commandType) {
+          return new Latency(initialThreshold);
+        }
+      };
+
+  private final LongAdder hedgesFired = new LongAdder();
+  private final LongAdder hedgesWon = new LongAdder();
+
+  public HedgingMiddleware(ScheduledExecutorService scheduler, Duration threshold) {
+    this(scheduler, Double.NaN, threshold);
+  }
+
+  public HedgingMiddleware(
+      ScheduledExecutorService scheduler, double percentile, Duration initialThreshold) {
+    checkArgument(scheduler, "Scheduler must not be null");
+    checkArgument(
+        Double.isNaN(percentile) || percentile > 0 && percentile < 100,
+        "Percentile must be between 0 and 100");
+    checkArgument(initialThreshold, "Threshold must not be null");
+    checkArgument(!initialThreshold.isNegative(), "Threshold must not be negative");
+    this.scheduler = scheduler;
+    this.percentile = percentile;
+    this.initialThreshold = initialThreshold.toNanos();
+  }
+
+  @Override
+  public <R, C extends Command<R>> R invoke(C command, Next<R> next) {
+    if (!(command instanceof Idempotent)) {
+      return next.invoke();
+    }
+
+    Latency latency = latencies.get(command.getClass());
+    long start = System.nanoTime();
+    Supplier<R> attempt = next::invoke;
+    Race<R> race = new Race<>(Deadline.propagate(attempt));
+    Future<?> first = scheduler.submit(() -> race.run(0));
+    ScheduledFuture<?> hedge =
+        scheduler.schedule(
+            () -> {
+              if (race.start()) {
+                hedgesFired.increment();
+                race.run(1);
+              }
+            },
+            latency.threshold,
+            TimeUnit.NANOSECONDS);
+    try {
+      Deadline.join(race.result);
+      R result = race.result.join();
+      if (!Double.isNaN(percentile)) {
+        latency.record(System.nanoTime() - start, percentile);
+      }
+      return result;
+    } catch (CompletionException e) {
+      throw rethrow(e.getCause());
+    } finally {
+      first.cancel(true);
+      hedge.cancel(true);
+      if (race.winner.get() == 1) {
+        hedgesWon.increment();
+      }
+    }
+  }
+
+  /** Returns the number of commands sent once more because they took too long. */
+  public long hedgesFired() {
+    return hedgesFired.sum();
+  }
+
+  /** Returns the number of commands whose second attempt finished first. */
+  public long hedgesWon() {
+    return hedgesWon.sum();
+  }
+
+  private static RuntimeException rethrow(Throwable cause) {
+    if (cause instanceof RuntimeException) {
+      throw (RuntimeException) cause;
+    }
+    if (cause instanceof Error) {
+      throw (Error) cause;
+    }
+    throw new IllegalStateException(cause);
+  }
+
+  private static final class Race<R> {
+
+    private final Supplier<R> attempt;
+    private final CompletableFuture<R> result = new CompletableFuture<>();
+    // the first attempt counts as running from the start, so that it can't lose to a late hedge
+    private final AtomicInteger running = new AtomicInteger(1);
+    private final AtomicInteger winner = new AtomicInteger(-1);
+
+    Race(Supplier<R> attempt) {
+      this.attempt = attempt;
+    }
+
+    /** Returns true if the second attempt should run, that is the race is not over. */
+    boolean start() {
+      running.incrementAndGet();
+      if (result.isDone()) {
+        running.decrementAndGet();
+        return false;
+      }
+      return true;
+    }
+
+    void run(int index) {
+      R value;
+      try {
+        value = attempt.get();
+      } catch (Throwable e) {
+        // a failed attempt doesn't end the race while the other attempt is running
+        if (running.decrementAndGet() == 0) {
+          result.completeExceptionally(e);
+        }
+        return;
+      }
+      if (winner.compareAndSet(-1, index)) {
+        result.complete(value);
+      }
+    }
+  }
+
+  private static final class Latency {
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private volatile long threshold;
+
+    Latency(long initialThreshold) {
+      this.threshold = initialThreshold;
+    }
+
+    void record(long nanos, double percentile) {
+      histogram.record(nanos);
+      long count = histogram.count();
+      if (count >= MINIMUM_SAMPLES && count % RECOMPUTE_EVERY == 0) {
+        threshold = histogram.valueAtPercentile(percentile);
+      }
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package an.awesome.pipelinr;
+
+import static an.awesome.pipelinr.Preconditions.checkArgument;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Routes commands to the first matching handler, like the default router, but resolves the
+ * candidates once per command class instead of scanning all handlers on every send.
+ *
+ * <p>Handlers are taken once, upon construction. For every command class, the router remembers the
+ * handlers that can possibly match it, in registration order, and stops at the first handler that
+ * matches by its generic type. Handlers that override matches() are kept as candidates and asked on
+ * every send. Commands without any candidates fail immediately.
+ *
+ * <pre>
+ *   new Pipelinr()
+ *     .with(handlers)
+ *     .with(new IndexedCommandRouter(handlers));
+ * </pre>
+ *
+ * <p>The index is held in a {@link ClassValue}, so lookups are lock-free and entries go away
+ * together with command classes.
+ */
+public class IndexedCommandRouter implements Command.Router {
+
+  private final Command.Handler[] handlers;
+  private final Class<?>[] commandTypes;
+
+  private final ClassValue<Route> routes =
+      new ClassValue<Route>() {
+        @Override
+        protected Route computeValue(Class<?> commandClass) {
+          return routeFor(commandClass);
+        }
+      };
+
+  public IndexedCommandRouter(CommandHandlers commandHandlers) {
+    checkArgument(commandHandlers, "Command handlers must not be null");
+    this.handlers = commandHandlers.supply().toArray(Command.Handler[]::new);
+    this.commandTypes = new Class<?>[handlers.length];
+    for (int i = 0; i < handlers.length; i++) {
+      commandTypes[i] = HandlerTypes.commandTypeOf(handlers[i].getClass());
+    }
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <C extends Command<R>, R> Command.Handler<C, R> route(C command) {
+    return routes.get(command.getClass()).route(command);
+  }
+
+  private Route routeFor(Class<?> commandClass) {
+    List<Command.Handler> candidates = new ArrayList<>();
+    for (int i = 0; i < handlers.length; i++) {
+      Class<?> commandType = commandTypes[i];
+      if (commandType == null) {
+        candidates.add(handlers[i]);
+      } else if (commandType.isAssignableFrom(commandClass)) {
+        candidates.add(handlers[i]);
+        return new Route(candidates, true);
+      }
+    }
+    return new Route(candidates, false);
+  }
+
+  private static class Route {
+
+    private final Command.Handler[] candidates;
+    private final boolean lastMatchesByType;
+
+    Route(List<Command.Handler> candidates, boolean lastMatchesByType) {
+      this.candidates = candidates.toArray(new Command.Handler[0]);
+      this.lastMatchesByType = lastMatchesByType;
+    }
+
+    @SuppressWarnings("unchecked")
+    Command.Handler route(Command command) {
+      int last = candidates.length - 1;
+      for (int i = 0; i < last; i++) {
+        if (candidates[i].matches(command)) {
+          return candidates[i];
+        }
+      }
+      if (last >= 0 && (lastMatchesByType || candidates[last].matches(command))) {
+        return candidates[last];
+      }
+      throw new CommandHandlerNotFoundException(command);
+    }
+  }
+}
@@ -0,0 +1,104 @@
+package an.awesome.pipelinr;
+
+import static an.awesome.pipelinr.Preconditions.checkArgument;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Routes notifications to all matching handlers, like the default router, but resolves the matching
+ * handlers once per notification class instead of scanning all handlers on every send.
+ *
+ * <p>Handlers are taken once, upon construction. For every notification class, the router remembers
+ * the handlers whose generic type is the class itself or one of its supertypes or interfaces.
+ * Handlers that override matches() are kept as candidates and asked on every send. If no candidates
+ * are asked, sending doesn't allocate.
+ *
+ * <pre>
+ *   new Pipelinr()
+ *     .with(handlers)
+ *     .with(new IndexedNotificationRouter(handlers));
+ * </pre>
+ *
+ * <p>The index is held in a {@link ClassValue}, so lookups are lock-free and entries go away
+ * together with notification classes.
+ */
+public class IndexedNotificationRouter implements Notification.Router {
+
+  private final Notification.Handler[] handlers;
+  private final Class<?>[] notificationTypes;
+
+  private final ClassValue<Route> routes =
+      new ClassValue<Route>() {
+        @Override
+        protected Route computeValue(Class<?> notificationClass) {
+          return routeFor(notificationClass);
+        }
+      };
+
+  public IndexedNotificationRouter(NotificationHandlers notificationHandlers) {
+    checkArgument(notificationHandlers, "Notification handlers must not be null");
+    this.handlers = notificationHandlers.supply().toArray(Notification.Handler[]::new);
+    this.notificationTypes = new Class<?>[handlers.length];
+    for (int i = 0; i < handlers.length; i++) {
+      notificationTypes[i] = HandlerTypes.notificationTypeOf(handlers[i].getClass());
+    }
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <N extends Notification> List<Notification.Handler<N>> route(N notification) {
+    return routes.get(notification.getClass()).route(notification);
+  }
+
+  private Route routeFor(Class<?> notificationClass) {
+    List<Notification.Handler> candidates = new ArrayList<>();
+    List<Boolean> matchesByType = new ArrayList<>();
+    for (int i = 0; i < handlers.length; i++) {
+      Class<?> notificationType = notificationTypes[i];
+      if (notificationType == null) {
+        candidates.add(handlers[i]);
+        matchesByType.add(false);
+      } else if (notificationType.isAssignableFrom(notificationClass)) {
+        candidates.add(handlers[i]);
+        matchesByType.add(true);
+      }
+    }
+    return new Route(candidates, matchesByType);
+  }
+
+  private static class Route {
+
+    private final Notification.Handler[] candidates;
+    private final boolean[] matchesByType;
+    private final List matching;
+
+    Route(List<Notification.Handler> candidates, List<Boolean> matchesByType) {
+      this.candidates = candidates.toArray(new Notification.Handler[0]);
+      this.matchesByType = new boolean[candidates.size()];
+      boolean allMatchByType = true;
+      for (int i = 0; i < this.matchesByType.length; i++) {
+        this.matchesByType[i] = matchesByType.get(i);
+        allMatchByType &= this.matchesByType[i];
+      }
+      this.matching =
+          allMatchByType ? Collections.unmodifiableList(Arrays.asList(this.candidates)) : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    List route(Notification notification) {
+      if (matching != null) {
+        return matching;
+      }
+      List<Notification.Handler> handlers = new ArrayList<>(candidates.length);
+      for (int i = 0; i < candidates.length; i++) {
+        if (matchesByType[i] || candidates[i].matches(notification)) {
+          handlers.add(candidates[i]);
+        }
+      }
+      return handlers;
+    }
+  }
+}
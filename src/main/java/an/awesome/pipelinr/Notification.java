@@ -1,5 +1,6 @@
 package an.awesome.pipelinr;
 
+import java.util.List;
 import java.util.stream.Stream;
 
 public interface Notification {
@@ -12,8 +13,7 @@ public interface Notification {
     void handle(N notification);
 
     default boolean matches(N notification) {
-      Generic<N> notificationType = new Generic<N>(getClass()) {};
-      return notificationType.resolve().isAssignableFrom(notification.getClass());
+      return HandlerTypes.notificationType(getClass()).isAssignableFrom(notification.getClass());
     }
   }
 
@@ -30,4 +30,9 @@ public interface Notification {
       void invoke();
     }
   }
+
+  interface Router {
+    /** Returns handlers that match a notification, in registration order. */
+    <N extends Notification> List<Handler<N>> route(N notification);
+  }
 }
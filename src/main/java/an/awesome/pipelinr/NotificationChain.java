@@ -0,0 +1,31 @@
+package an.awesome.pipelinr;
+
+import java.util.stream.Stream;
+
+/**
+ * An immutable, array-backed chain of notification middlewares.
+ *
+ * <p>Every invocation walks the array, allocating a single {@link Notification.Middleware.Next} per
+ * middleware and nothing when there are no middlewares.
+ */
+final class NotificationChain {
+
+  private final Notification.Middleware[] middlewares;
+
+  NotificationChain(Stream<Notification.Middleware> middlewares) {
+    this.middlewares = middlewares.toArray(Notification.Middleware[]::new);
+  }
+
+  <N extends Notification> void invoke(N notification, Notification.Middleware.Next handler) {
+    invoke(0, notification, handler);
+  }
+
+  private <N extends Notification> void invoke(
+      int index, N notification, Notification.Middleware.Next handler) {
+    if (index == middlewares.length) {
+      handler.invoke();
+      return;
+    }
+    middlewares[index].invoke(notification, () -> invoke(index + 1, notification, handler));
+  }
+}
@@ -5,4 +5,12 @@ import java.util.List;
 public interface NotificationHandlingStrategy {
 
   void handle(List<Runnable> runnableNotifications);
+
+  /**
+   * Runs handlers of a given notification. Strategies that depend on the notification itself, such
+   * as {@link ConflatingNoWait}, override this method; others simply run the handlers.
+   */
+  default void handle(Notification notification, List<Runnable> runnableNotifications) {
+    handle(runnableNotifications);
+  }
 }
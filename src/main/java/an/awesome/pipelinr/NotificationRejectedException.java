@@ -0,0 +1,15 @@
+package an.awesome.pipelinr;
+
+public class NotificationRejectedException extends RuntimeException {
+
+  private final int capacity;
+
+  public NotificationRejectedException(int capacity) {
+    this.capacity = capacity;
+  }
+
+  @Override
+  public String getMessage() {
+    return "Cannot queue a notification handler, all " + capacity + " slot(s) are taken";
+  }
+}
@@ -9,7 +9,8 @@ import java.util.concurrent.ExecutorService;
 /**
  * Run each notification handler in a thread pool.
  *
- * <p>Returns when all threads (handlers) are finished.
+ * <p>Returns when all threads (handlers) are finished. If the deadline of the notification passes
+ * first, stops waiting and throws DeadlineExceededException.
  *
  * <p>In case of any exception(s), they are captured in an AggregateException.
  */
@@ -24,7 +25,8 @@ public class ParallelWhenAll implements NotificationHandlingStrategy {
   @Override
   public void handle(List<Runnable> runnableNotifications) {
     Collection<Throwable> exceptions = new CopyOnWriteArrayList<>();
-    CompletableFuture.allOf(
+    Deadline.join(
+        CompletableFuture.allOf(
             runnableNotifications.stream()
                 .map(
                     runnable ->
@@ -34,8 +36,7 @@ public class ParallelWhenAll implements NotificationHandlingStrategy {
                                   exceptions.add(throwable);
                                   return null;
                                 }))
-                .toArray(CompletableFuture[]::new))
-        .join();
+                .toArray(CompletableFuture[]::new)));
     if (!exceptions.isEmpty()) {
       throw new AggregateException(exceptions);
     }
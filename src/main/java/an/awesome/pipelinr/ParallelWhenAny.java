@@ -10,7 +10,8 @@ import java.util.stream.Collectors;
 /**
  * Run each notification handler in a thread pool.
  *
- * <p>Returns when any thread (handler) is finished.
+ * <p>Returns when any thread (handler) is finished. If the deadline of the notification passes
+ * first, stops waiting and throws DeadlineExceededException.
  *
  * <p>All exceptions that happened before returning are captured in an AggregateException.
  */
@@ -36,7 +37,7 @@ public class ParallelWhenAny implements NotificationHandlingStrategy {
                               return null;
                             }))
             .collect(Collectors.toList());
-    CompletableFuture.anyOf(futures.toArray(new CompletableFuture[] {})).join();
+    Deadline.join(CompletableFuture.anyOf(futures.toArray(new CompletableFuture[] {})));
     if (!exceptions.isEmpty()) {
       throw new AggregateException(exceptions);
     }
@@ -0,0 +1,153 @@
+package an.awesome.pipelinr;
+
+import static an.awesome.pipelinr.Preconditions.checkArgument;
+import static an.awesome.pipelinr.Runnables.runQuietly;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Run notification handlers in a thread pool, in order of notifications with the same key.
+ *
+ * <p>Returns immediately and does not wait for any handlers to finish. Keys are hashed onto {@code
+ * lanes} lanes. Each lane runs its notifications one at a time, in the order they are sent, so
+ * notifications with the same key are handled in order, while different lanes run in parallel.
+ *
+ * <p>Notifications with a null key are not ordered.
+ *
+ * <p>Note that you cannot capture any exceptions, except for {@link RejectedExecutionException}
+ * when the thread pool rejects a notification, in which case the notification is dropped.
+ * Notifications queued in its lane meanwhile run once the lane is scheduled again, by the next
+ * notification of the lane.
+ *
+ * <p>Each instance has lanes of its own, and two notifications with the same key are ordered only
+ * if they go through the same instance, so a pipeline must return the same instance for every send:
+ *
+ * <pre>
+ *   PartitionedNoWait strategy = new PartitionedNoWait(executor, 8, it -&gt; ((OrderEvent) it).orderId());
+ *   new Pipelinr().with(() -&gt; strategy);
+ * </pre>
+ */
+public class PartitionedNoWait implements NotificationHandlingStrategy {
+
+  // a lane gives its thread back after this many notifications, so lanes share a smaller pool
+  private static final int BATCH_SIZE = 64;
+
+  private final ExecutorService executorService;
+  private final Function<? super Notification, ?> keyOf;
+  private final Lane[] lanes;
+
+  public PartitionedNoWait(
+      ExecutorService executorService, int lanes, Function<? super Notification, ?> keyOf) {
+    checkArgument(executorService, "Executor service must not be null");
+    checkArgument(lanes > 0, "Lanes must be positive");
+    checkArgument(keyOf, "Key function must not be null");
+    this.executorService = executorService;
+    this.keyOf = keyOf;
+    this.lanes = new Lane[lanes];
+    for (int i = 0; i < lanes; i++) {
+      this.lanes[i] = new Lane();
+    }
+  }
+
+  /** Runs handlers outside of lanes, like handlers of a notification with a null key. */
+  @Override
+  public void handle(List<Runnable> runnableNotifications) {
+    executorService.execute(() -> runQuietly(runnableNotifications));
+  }
+
+  @Override
+  public void handle(Notification notification, List<Runnable> runnableNotifications) {
+    Object key = keyOf.apply(notification);
+    if (key == null) {
+      handle(runnableNotifications);
+      return;
+    }
+    lanes[laneOf(key)].enqueue(runnableNotifications);
+  }
+
+  /** Returns the number of lanes. */
+  public int lanes() {
+    return lanes.length;
+  }
+
+  /** Returns the number of notifications waiting or running in a given lane. */
+  public int queueDepth(int lane) {
+    checkArgument(lane >= 0 && lane < lanes.length, "Lane must be between 0 and " + lanes.length);
+    return lanes[lane].depth.get();
+  }
+
+  /** Returns the lane of a given key. */
+  public int laneOf(Object key) {
+    int hash = key.hashCode();
+    return Math.floorMod(hash ^ (hash >>> 16), lanes.length);
+  }
+
+  private class Lane {
+
+    private final Queue<List<Runnable>> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    void enqueue(List<Runnable> runnableNotifications) {
+      depth.incrementAndGet();
+      queue.add(runnableNotifications);
+      try {
+        schedule();
+      } catch (RejectedExecutionException e) {
+        // the sender learns that the notification is dropped, so it must not run later, unless a
+        // lane scheduled by another thread has already taken it
+        if (remove(runnableNotifications)) {
+          throw e;
+        }
+      }
+    }
+
+    private boolean remove(List<Runnable> runnableNotifications) {
+      for (Iterator<List<Runnable>> it = queue.iterator(); it.hasNext(); ) {
+        if (it.next() == runnableNotifications) {
+          it.remove();
+          depth.decrementAndGet();
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private void schedule() {
+      if (!queue.isEmpty() && scheduled.compareAndSet(false, true)) {
+        try {
+          executorService.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+          scheduled.set(false);
+          throw e;
+        }
+      }
+    }
+
+    private void drain() {
+      try {
+        List<Runnable> runnableNotifications;
+        for (int i = 0; i < BATCH_SIZE && (runnableNotifications = queue.poll()) != null; i++) {
+          runQuietly(runnableNotifications);
+          depth.decrementAndGet();
+        }
+      } finally {
+        scheduled.set(false);
+      }
+      // a notification may have been queued after the last poll, while the lane was scheduled
+      try {
+        schedule();
+      } catch (RejectedExecutionException e) {
+        // the rest of the lane runs once the next notification of the lane schedules it
+      }
+    }
+  }
+}
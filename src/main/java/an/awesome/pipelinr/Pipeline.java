@@ -1,8 +1,54 @@
 package an.awesome.pipelinr;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
 public interface Pipeline {
 
   <R, C extends Command<R>> R send(C command);
 
   <N extends Notification> void send(N notification);
+
+  /** Sends a command that is skipped if it doesn't finish before a deadline. */
+  default <R, C extends Command<R>> R send(C command, Deadline deadline) {
+    return deadline.attach(() -> send(command));
+  }
+
+  /** Sends a notification whose handlers are skipped if they don't run before a deadline. */
+  default <N extends Notification> void send(N notification, Deadline deadline) {
+    deadline.attach(
+        () -> {
+          send(notification);
+          return null;
+        });
+  }
+
+  /**
+   * Sends a command without waiting for its result. By default, the command is sent synchronously
+   * and the result (or exception) is returned as a completed stage.
+   */
+  default <R, C extends Command<R>> CompletionStage<R> sendAsync(C command) {
+    CompletableFuture<R> result = new CompletableFuture<>();
+    try {
+      result.complete(send(command));
+    } catch (Throwable e) {
+      result.completeExceptionally(e);
+    }
+    return result;
+  }
+
+  /**
+   * Sends commands and returns their results in the same order. By default, commands are sent one
+   * by one.
+   */
+  default <R, C extends Command<R>> List<R> sendAll(Collection<C> commands) {
+    List<R> results = new ArrayList<>(commands.size());
+    for (C command : commands) {
+      results.add(send(command));
+    }
+    return results;
+  }
 }
@@ -0,0 +1,121 @@
+package an.awesome.pipelinr;
+
+import static an.awesome.pipelinr.Preconditions.checkArgument;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Counts invocations and errors, and records latencies of commands and handlers sent through a
+ * pipeline.
+ *
+ * <pre>
+ *   PipelineMetrics metrics = new PipelineMetrics();
+ *   Pipeline pipeline = new Pipelinr().with(handlers).with(metrics);
+ *   ...
+ *   metrics.exportTo((kind, type, timer) -&gt; registry.gauge(...));
+ * </pre>
+ *
+ * <ul>
+ *   <li>{@link Kind#COMMAND} covers the whole send per command class, including routing and
+ *       middlewares.
+ *   <li>{@link Kind#COMMAND_HANDLER} covers handle() per handler class.
+ *   <li>{@link Kind#NOTIFICATION} covers the whole send per notification class, including the
+ *       notification handling strategy.
+ *   <li>{@link Kind#NOTIFICATION_HANDLER} covers handle() per handler class, on whatever thread the
+ *       strategy runs the handler.
+ * </ul>
+ *
+ * <p>Counters are striped and histograms are lock-free, so recording scales across cores. Pipelines
+ * without metrics don't pay for them.
+ */
+public final class PipelineMetrics {
+
+  public enum Kind {
+    COMMAND,
+    COMMAND_HANDLER,
+    NOTIFICATION,
+    NOTIFICATION_HANDLER
+  }
+
+  @FunctionalInterface
+  public interface Exporter {
+    void export(Kind kind, Class<?> type, Timer timer);
+  }
+
+  @SuppressWarnings("unchecked")
+  private final Map<Class<?>, Timer>[] timers = new Map[Kind.values().length];
+
+  public PipelineMetrics() {
+    for (Kind kind : Kind.values()) {
+      timers[kind.ordinal()] = new ConcurrentHashMap<>();
+    }
+  }
+
+  /** Passes every recorded timer to the exporter. */
+  public void exportTo(Exporter exporter) {
+    checkArgument(exporter, "Exporter must not be null");
+    for (Kind kind : Kind.values()) {
+      timers[kind.ordinal()].forEach((type, timer) -> exporter.export(kind, type, timer));
+    }
+  }
+
+  /** Returns a timer of a given command, notification or handler class. */
+  public Timer timer(Kind kind, Class<?> type) {
+    Map<Class<?>, Timer> timersOfKind = timers[kind.ordinal()];
+    Timer timer = timersOfKind.get(type);
+    return timer != null ? timer : timersOfKind.computeIfAbsent(type, it -> new Timer());
+  }
+
+  public static final class Timer {
+
+    private final LongAdder errors = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    Timer() {}
+
+    public long count() {
+      return latency.count();
+    }
+
+    public long errors() {
+      return errors.sum();
+    }
+
+    public LatencyHistogram latency() {
+      return latency;
+    }
+
+    void record(long nanos, boolean failed) {
+      latency.record(nanos);
+      if (failed) {
+        errors.increment();
+      }
+    }
+
+    <T> T time(Supplier<T> work) {
+      long start = System.nanoTime();
+      boolean failed = true;
+      try {
+        T result = work.get();
+        failed = false;
+        return result;
+      } finally {
+        record(System.nanoTime() - start, failed);
+      }
+    }
+
+    void time(Runnable work) {
+      long start = System.nanoTime();
+      boolean failed = true;
+      try {
+        work.run();
+        failed = false;
+      } finally {
+        record(System.nanoTime() - start, failed);
+      }
+    }
+  }
+}
@@ -3,20 +3,31 @@ package an.awesome.pipelinr;
 import static an.awesome.pipelinr.Preconditions.checkArgument;
 import static java.util.stream.Collectors.toList;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
 
-public class Pipelinr implements Pipeline {
+public class Pipelinr extends AbstractPipeline {
 
   private Command.Router router = new ToFirstMatching();
+  private Notification.Router notificationRouter = new ToAllMatching();
 
   private StreamSupplier<Command.Middleware> commandMiddlewares = Stream::empty;
+  private StreamSupplier<Command.AsyncMiddleware> asyncCommandMiddlewares = Stream::empty;
   private StreamSupplier<Command.Handler> commandHandlers = Stream::empty;
   private StreamSupplier<Notification.Middleware> notificationMiddlewares = Stream::empty;
   private StreamSupplier<Notification.Handler> notificationHandlers = Stream::empty;
   private Supplier<NotificationHandlingStrategy> notificationHandlingStrategySupplier =
       StopOnException::new;
+  private PipelineMetrics metrics;
+  private CircuitBreakers circuitBreakers;
+
+  // built on the first send after middlewares are set, so that sends only walk an array
+  private volatile CommandChain commandChain;
+  private volatile AsyncCommandChain asyncCommandChain;
+  private volatile NotificationChain notificationChain;
 
   public Pipelinr() {}
 
@@ -35,12 +46,22 @@ public class Pipelinr implements Pipeline {
   public Pipelinr with(Notification.Middlewares middlewares) {
     checkArgument(middlewares, "Middlewares must not be null");
     this.notificationMiddlewares = middlewares::supply;
+    this.notificationChain = null;
     return this;
   }
 
   public Pipelinr with(Command.Middlewares middlewares) {
     checkArgument(middlewares, "Middlewares must not be null");
     this.commandMiddlewares = middlewares::supply;
+    this.commandChain = null;
+    this.asyncCommandChain = null;
+    return this;
+  }
+
+  public Pipelinr with(Command.AsyncMiddlewares middlewares) {
+    checkArgument(middlewares, "Middlewares must not be null");
+    this.asyncCommandMiddlewares = middlewares::supply;
+    this.asyncCommandChain = null;
     return this;
   }
 
@@ -59,57 +80,109 @@ public class Pipelinr implements Pipeline {
     return this;
   }
 
-  public <R, C extends Command<R>> R send(C command) {
-    checkArgument(command, "Command must not be null");
+  /** Routes notifications with a given router. */
+  public Pipelinr withNotificationRouter(Notification.Router router) {
+    checkArgument(router, "Router must not be null");
+    this.notificationRouter = router;
+    return this;
+  }
+
+  /** Records counts, errors and latencies of commands, notifications and their handlers. */
+  public Pipelinr with(PipelineMetrics metrics) {
+    checkArgument(metrics, "Metrics must not be null");
+    this.metrics = metrics;
+    return this;
+  }
+
+  /** Guards command and notification handlers with circuit breakers, one per handler class. */
+  public Pipelinr with(CircuitBreakers circuitBreakers) {
+    checkArgument(circuitBreakers, "Circuit breakers must not be null");
+    this.circuitBreakers = circuitBreakers;
+    return this;
+  }
 
-    Command.Middleware.Next<R> handleCommand = new HandleCommand<>(command);
-    return commandMiddlewares
-        .supplyEx()
-        .foldRight(handleCommand, (step, next) -> () -> step.invoke(command, next))
-        .invoke();
+  /**
+   * Returns an immutable, thread-safe snapshot of this pipeline.
+   *
+   * <p>Unlike this pipeline, which obtains handlers and the notification handling strategy on every
+   * send, the snapshot obtains them once. Commands and notifications are routed via {@link
+   * IndexedCommandRouter} and {@link IndexedNotificationRouter}, unless a custom router is set.
+   * Later changes to this pipeline don't affect the snapshot.
+   */
+  public Pipeline build() {
+    return new CompiledPipeline(
+        router instanceof ToFirstMatching
+            ? new IndexedCommandRouter(commandHandlers::supply)
+            : router,
+        notificationRouter instanceof ToAllMatching
+            ? new IndexedNotificationRouter(notificationHandlers::supply)
+            : notificationRouter,
+        commandChain(),
+        asyncCommandChain(),
+        notificationChain(),
+        notificationHandlingStrategy(),
+        metrics,
+        circuitBreakers);
   }
 
-  @SuppressWarnings("unchecked")
   @Override
-  public <N extends Notification> void send(N notification) {
-    checkArgument(notification, "Notification must not be null");
-
-    List<Runnable> runnableNotifications =
-        notificationHandlers
-            .supply()
-            .filter(it -> it.matches(notification))
-            .map(
-                it -> {
-                  Notification.Middleware.Next handleNotification = () -> it.handle(notification);
-                  return (Runnable)
-                      () ->
-                          notificationMiddlewares
-                              .supplyEx()
-                              .foldRight(
-                                  handleNotification,
-                                  (step, next) -> () -> step.invoke(notification, next))
-                              .invoke();
-                })
-            .collect(toList());
-
-    NotificationHandlingStrategy notificationHandlingStrategy =
-        notificationHandlingStrategySupplier.get();
-    notificationHandlingStrategy.handle(runnableNotifications);
-  }
-
-  private class HandleCommand<R, C extends Command<R>> implements Command.Middleware.Next<R> {
-
-    private final C command;
-
-    public HandleCommand(C command) {
-      this.command = command;
+  Command.Router commandRouter() {
+    return router;
+  }
+
+  @Override
+  Command.Router batchRouter() {
+    return router instanceof ToFirstMatching ? new ToFirstMatchingOnce() : router;
+  }
+
+  @Override
+  Notification.Router notificationRouter() {
+    return notificationRouter;
+  }
+
+  @Override
+  CommandChain commandChain() {
+    CommandChain chain = commandChain;
+    if (chain == null) {
+      chain = new CommandChain(commandMiddlewares.supply());
+      commandChain = chain;
     }
+    return chain;
+  }
 
-    @Override
-    public R invoke() {
-      Command.Handler<C, R> handler = router.route(command);
-      return handler.handle(command);
+  @Override
+  AsyncCommandChain asyncCommandChain() {
+    AsyncCommandChain chain = asyncCommandChain;
+    if (chain == null) {
+      chain = new AsyncCommandChain(commandMiddlewares.supply(), asyncCommandMiddlewares.supply());
+      asyncCommandChain = chain;
+    }
+    return chain;
+  }
+
+  @Override
+  NotificationChain notificationChain() {
+    NotificationChain chain = notificationChain;
+    if (chain == null) {
+      chain = new NotificationChain(notificationMiddlewares.supply());
+      notificationChain = chain;
     }
+    return chain;
+  }
+
+  @Override
+  NotificationHandlingStrategy notificationHandlingStrategy() {
+    return notificationHandlingStrategySupplier.get();
+  }
+
+  @Override
+  PipelineMetrics metrics() {
+    return metrics;
+  }
+
+  @Override
+  CircuitBreakers circuitBreakers() {
+    return circuitBreakers;
   }
 
   private class ToFirstMatching implements Command.Router {
@@ -124,4 +197,48 @@ public class Pipelinr implements Pipeline {
           .orElseThrow(() -> new CommandHandlerNotFoundException(command));
     }
   }
+
+  /**
+   * Routes commands of a single call like {@link ToFirstMatching}, but supplies handlers once and
+   * remembers the handler of each command class, unless a handler that overrides matches() is asked
+   * along the way.
+   */
+  private class ToFirstMatchingOnce implements Command.Router {
+
+    private final List<Command.Handler> handlers = commandHandlers.supply().collect(toList());
+    private final Map<Class<?>, Command.Handler> routes = new HashMap<>();
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <C extends Command<R>, R> Command.Handler<C, R> route(C command) {
+      Command.Handler handler = routes.get(command.getClass());
+      if (handler != null) {
+        return handler;
+      }
+      boolean byType = true;
+      for (Command.Handler candidate : handlers) {
+        byType &= HandlerTypes.commandTypeOf(candidate.getClass()) != null;
+        if (candidate.matches(command)) {
+          if (byType) {
+            routes.put(command.getClass(), candidate);
+          }
+          return candidate;
+        }
+      }
+      throw new CommandHandlerNotFoundException(command);
+    }
+  }
+
+  private class ToAllMatching implements Notification.Router {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <N extends Notification> List<Notification.Handler<N>> route(N notification) {
+      return notificationHandlers
+          .supply()
+          .filter(handler -> handler.matches(notification))
+          .map(handler -> (Notification.Handler<N>) handler)
+          .collect(toList());
+    }
+  }
 }
@@ -0,0 +1,15 @@
+package an.awesome.pipelinr;
+
+public class RateLimitExceededException extends RuntimeException {
+
+  private final String commandClass;
+
+  public RateLimitExceededException(Command command) {
+    this.commandClass = command.getClass().getSimpleName();
+  }
+
+  @Override
+  public String getMessage() {
+    return "Cannot send " + commandClass + " command, rate limit exceeded";
+  }
+}
@@ -0,0 +1,203 @@
+package an.awesome.pipelinr;
+
+import static an.awesome.pipelinr.Preconditions.checkArgument;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits how often commands are sent, per key. By default, commands are keyed by class; a key
+ * function can key them by a field, such as a tenant, or return null to leave a command unlimited.
+ *
+ * <pre>
+ *   // 20 reports per second per tenant, other commands are not limited
+ *   new RateLimitMiddleware(
+ *       20, Duration.ofSeconds(1), it -&gt; it instanceof Report ? ((Report) it).tenant() : null);
+ * </pre>
+ *
+ * <p>Commands over the limit fail with {@link RateLimitExceededException}, unless {@code maxWait}
+ * is positive, in which case they wait for their turn in order of arrival, if it is at most {@code
+ * maxWait} away. Pass {@link #FOREVER} to wait however long it takes. Either way, commands don't
+ * wait past the current {@link Deadline}: a command whose turn is after it fails with {@link
+ * DeadlineExceededException} right away, without taking the turn.
+ *
+ * <p>Each key is a token bucket of {@code burst} tokens (by default, {@code permits}) refilled at
+ * {@code permits} per {@code period}, implemented as a generic cell rate algorithm: a key holds a
+ * single timestamp that is advanced with compare-and-set, so sending never takes locks. Keys whose
+ * bucket is full again are removed once the number of keys doubles, so keys such as tenants or
+ * command classes don't pile up.
+ */
+public class RateLimitMiddleware implements Command.Middleware {
+
+  /** Makes commands over the limit wait however long it takes. */
+  public static final Duration FOREVER = Duration.ofNanos(Long.MAX_VALUE);
+
+  private static final int MIN_KEYS_TO_SWEEP = 1024;
+  // a removed key holds this timestamp, so that a send that still sees it looks the key up again
+  private static final long REMOVED = Long.MAX_VALUE;
+
+  private final long emissionInterval;
+  private final long burstTolerance;
+  private final long maxWait;
+  private final Function<? super Command<?>, ?> keyOf;
+  private final LongSupplier nanoTime;
+
+  private final ConcurrentMap<Object, AtomicLong> theoreticalArrivalTimes =
+      new ConcurrentHashMap<>();
+  private final AtomicBoolean sweeping = new AtomicBoolean();
+  private volatile int keysToSweep = MIN_KEYS_TO_SWEEP;
+  private final LongAdder rejected = new LongAdder();
+
+  public RateLimitMiddleware(int permits, Duration period) {
+    this(permits, period, Command::getClass);
+  }
+
+  public RateLimitMiddleware(int permits, Duration period, Function<? super Command<?>, ?> keyOf) {
+    this(permits, period, permits, Duration.ZERO, keyOf);
+  }
+
+  /**
+   * Lets {@code burst} commands per key through at once, and makes commands over the limit wait for
+   * their turn, or fail if it is further than {@code maxWait}. With a zero {@code maxWait},
+   * commands over the limit fail right away.
+   */
+  public RateLimitMiddleware(
+      int permits,
+      Duration period,
+      int burst,
+      Duration maxWait,
+      Function<? super Command<?>, ?> keyOf) {
+    this(permits, period, burst, maxWait, keyOf, System::nanoTime);
+  }
+
+  RateLimitMiddleware(
+      int permits,
+      Duration period,
+      int burst,
+      Duration maxWait,
+      Function<? super Command<?>, ?> keyOf,
+      LongSupplier nanoTime) {
+    checkArgument(permits > 0, "Permits must be positive");
+    checkArgument(period, "Period must not be null");
+    checkArgument(!period.isNegative() && !period.isZero(), "Period must be positive");
+    checkArgument(burst > 0, "Burst must be positive");
+    checkArgument(maxWait, "Max wait must not be null");
+    checkArgument(!maxWait.isNegative(), "Max wait must not be negative");
+    checkArgument(keyOf, "Key function must not be null");
+    this.emissionInterval = Math.max(1, period.toNanos() / permits);
+    this.burstTolerance = emissionInterval * (burst - 1);
+    this.maxWait = maxWait.compareTo(FOREVER) >= 0 ? Long.MAX_VALUE : maxWait.toNanos();
+    this.keyOf = keyOf;
+    this.nanoTime = nanoTime;
+  }
+
+  @Override
+  public <R, C extends Command<R>> R invoke(C command, Next<R> next) {
+    Object key = keyOf.apply(command);
+    if (key == null) {
+      return next.invoke();
+    }
+
+    long untilDeadline = Deadline.remainingNanosOfCurrent();
+    long wait = acquire(key, Math.min(maxWait, untilDeadline));
+    if (wait < 0) {
+      if (untilDeadline < maxWait) {
+        throw new DeadlineExceededException();
+      }
+      rejected.increment();
+      throw new RateLimitExceededException(command);
+    }
+    if (wait > 0) {
+      sleep(wait);
+    }
+    return next.invoke();
+  }
+
+  /** Returns the number of commands rejected over the limit. */
+  public long rejected() {
+    return rejected.sum();
+  }
+
+  /** Returns the number of keys whose timestamps are kept. */
+  int keys() {
+    return theoreticalArrivalTimes.size();
+  }
+
+  long acquire(Object key) {
+    return acquire(key, maxWait);
+  }
+
+  /** Reserves a turn and returns how long to wait for it, or -1 if it is further than maxWait. */
+  private long acquire(Object key, long maxWait) {
+    while (true) {
+      AtomicLong theoreticalArrivalTime = theoreticalArrivalTimes.get(key);
+      if (theoreticalArrivalTime == null) {
+        theoreticalArrivalTime =
+            theoreticalArrivalTimes.computeIfAbsent(key, it -> new AtomicLong(Long.MIN_VALUE));
+        if (theoreticalArrivalTimes.size() >= keysToSweep) {
+          sweep();
+        }
+      }
+      long now = nanoTime.getAsLong();
+      while (true) {
+        long current = theoreticalArrivalTime.get();
+        if (current == REMOVED) {
+          break;
+        }
+        long start = isIdle(current, now) ? now : current;
+        long wait = start - burstTolerance - now;
+        if (wait > maxWait) {
+          return -1;
+        }
+        if (theoreticalArrivalTime.compareAndSet(current, start + emissionInterval)) {
+          return Math.max(0, wait);
+        }
+      }
+    }
+  }
+
+  /** Removes keys whose bucket is full, so that their next send would start from scratch anyway. */
+  private void sweep() {
+    if (!sweeping.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      long now = nanoTime.getAsLong();
+      for (Map.Entry<Object, AtomicLong> entry : theoreticalArrivalTimes.entrySet()) {
+        AtomicLong theoreticalArrivalTime = entry.getValue();
+        long current = theoreticalArrivalTime.get();
+        if (isIdle(current, now) && theoreticalArrivalTime.compareAndSet(current, REMOVED)) {
+          theoreticalArrivalTimes.remove(entry.getKey(), theoreticalArrivalTime);
+        }
+      }
+      keysToSweep = Math.max(MIN_KEYS_TO_SWEEP, 2 * theoreticalArrivalTimes.size());
+    } finally {
+      sweeping.set(false);
+    }
+  }
+
+  private static boolean isIdle(long theoreticalArrivalTime, long now) {
+    return theoreticalArrivalTime == Long.MIN_VALUE || theoreticalArrivalTime - now < 0;
+  }
+
+  private static void sleep(long nanos) {
+    long deadline = System.nanoTime() + nanos;
+    long remaining = nanos;
+    while (remaining > 0) {
+      LockSupport.parkNanos(remaining);
+      if (Thread.interrupted()) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while waiting for the rate limit");
+      }
+      remaining = deadline - System.nanoTime();
+    }
+  }
+}
@@ -0,0 +1,269 @@
+package an.awesome.pipelinr;
+
+import static an.awesome.pipelinr.Preconditions.checkArgument;
+import static an.awesome.pipelinr.Runnables.runQuietly;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Run notification handlers in consumer threads that read notifications from a preallocated ring
+ * buffer, as in the LMAX Disruptor.
+ *
+ * <p>Returns immediately and does not wait for any handlers to finish, unless the ring buffer is
+ * full, in which case waits until the slowest consumer frees a slot.
+ *
+ * <p>Each of {@code consumers} consumer threads runs handlers of a notification at positions equal
+ * to its index modulo {@code consumers}, so each handler is always run by the same consumer, in the
+ * order notifications are sent. Consumers therefore run handlers of the same notification in
+ * parallel, but not different notifications: with fewer handlers per notification than consumers,
+ * the extra consumers only keep up with the sequence. A consumer runs all notifications that are
+ * available at once before it reports progress, and waits for more according to {@link
+ * WaitStrategy}. Sending a notification takes no locks and allocates nothing, except with {@link
+ * WaitStrategy#BLOCKING} when consumers are asleep.
+ *
+ * <p>Note that you cannot capture any exceptions. Consumers keep running when a handler throws or
+ * interrupts its thread. If a consumer stops anyway, sends fail instead of waiting for it.
+ *
+ * <p>Consumers run in a given thread pool until the strategy is closed, so the pool must have a
+ * thread for each of them, and interrupting them doesn't stop them. Every instance starts consumers
+ * of its own, so create it once, next to the pipeline, rather than in the strategy supplier:
+ *
+ * <pre>
+ *   RingBufferNoWait strategy = new RingBufferNoWait(executor, 4096, 4, WaitStrategy.YIELDING);
+ *   new Pipelinr().with(() -&gt; strategy);
+ * </pre>
+ */
+public class RingBufferNoWait implements NotificationHandlingStrategy, Closeable {
+
+  public enum WaitStrategy {
+    /** Sleeps until a notification is sent. Saves CPU at the cost of latency. */
+    BLOCKING,
+    /** Spins for a while, then yields the CPU to other threads between checks. */
+    YIELDING,
+    /** Spins without pause. Lowest latency, but occupies a CPU core per consumer. */
+    BUSY_SPIN
+  }
+
+  private static final int SPINS_BEFORE_YIELD = 100;
+  private static final long MAX_SLEEP_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final List<?>[] slots;
+  // for each slot, the lap of the notification published into it
+  private final AtomicIntegerArray published;
+  private final int mask;
+  private final int shift;
+  private final WaitStrategy waitStrategy;
+
+  private final AtomicLong claimed = new AtomicLong(-1);
+  private final Consumer[] consumers;
+  private volatile long minimumConsumedCache = -1;
+  private volatile boolean running = true;
+  // consumers stop once the strategy is closed and no sender is between its check and its publish
+  private final AtomicInteger senders = new AtomicInteger();
+  private volatile Throwable consumerFailure;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notificationSent = lock.newCondition();
+  private final AtomicInteger sleepers = new AtomicInteger();
+
+  public RingBufferNoWait(
+      ExecutorService executorService, int size, int consumers, WaitStrategy waitStrategy) {
+    checkArgument(executorService, "Executor service must not be null");
+    checkArgument(size > 0 && Integer.bitCount(size) == 1, "Size must be a power of two");
+    checkArgument(consumers > 0, "Consumers must be positive");
+    checkArgument(waitStrategy, "Wait strategy must not be null");
+    this.slots = new List<?>[size];
+    this.published = new AtomicIntegerArray(size);
+    for (int i = 0; i < size; i++) {
+      published.set(i, -1);
+    }
+    this.mask = size - 1;
+    this.shift = Integer.numberOfTrailingZeros(size);
+    this.waitStrategy = waitStrategy;
+    this.consumers = new Consumer[consumers];
+    for (int i = 0; i < consumers; i++) {
+      this.consumers[i] = new Consumer(i);
+      executorService.execute(this.consumers[i]);
+    }
+  }
+
+  @Override
+  public void handle(List<Runnable> runnableNotifications) {
+    senders.incrementAndGet();
+    try {
+      if (!running) {
+        throw new IllegalStateException("Ring buffer is closed");
+      }
+      checkConsumers();
+      long sequence = claimed.incrementAndGet();
+      awaitFreeSlot(sequence - slots.length);
+      int index = (int) sequence & mask;
+      slots[index] = runnableNotifications;
+      // a volatile write, so consumers that see the lap also see the slot
+      published.set(index, lap(sequence));
+    } finally {
+      senders.decrementAndGet();
+    }
+    if (waitStrategy == WaitStrategy.BLOCKING && sleepers.get() > 0) {
+      lock.lock();
+      try {
+        notificationSent.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /** Returns the number of notifications sent, but not yet consumed by all consumers. */
+  public long backlog() {
+    return Math.max(0, claimed.get() - minimumConsumed());
+  }
+
+  /**
+   * Rejects further notifications, and stops consumers once they consume notifications that are
+   * already sent, including those whose senders are waiting for a free slot.
+   */
+  @Override
+  public void close() {
+    running = false;
+    lock.lock();
+    try {
+      notificationSent.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void awaitFreeSlot(long wrapPoint) {
+    if (wrapPoint <= minimumConsumedCache) {
+      return;
+    }
+    long minimumConsumed;
+    while (wrapPoint > (minimumConsumed = minimumConsumed())) {
+      checkConsumers();
+      LockSupport.parkNanos(1);
+    }
+    minimumConsumedCache = minimumConsumed;
+  }
+
+  private void checkConsumers() {
+    Throwable failure = consumerFailure;
+    if (failure != null) {
+      throw new IllegalStateException("A consumer of the ring buffer has stopped", failure);
+    }
+  }
+
+  private long minimumConsumed() {
+    long minimum = Long.MAX_VALUE;
+    for (Consumer consumer : consumers) {
+      minimum = Math.min(minimum, consumer.consumed.get());
+    }
+    return minimum;
+  }
+
+  private boolean isPublished(long sequence) {
+    return published.get((int) sequence & mask) == lap(sequence);
+  }
+
+  /** Returns the highest sequence such that all notifications up to it are published. */
+  private long highestPublished(long from) {
+    long claimed = this.claimed.get();
+    long sequence = from;
+    while (sequence <= claimed && isPublished(sequence)) {
+      sequence++;
+    }
+    return sequence - 1;
+  }
+
+  private int lap(long sequence) {
+    return (int) (sequence >>> shift);
+  }
+
+  private class Consumer implements Runnable {
+
+    private final int index;
+    private final AtomicLong consumed = new AtomicLong(-1);
+
+    Consumer(int index) {
+      this.index = index;
+    }
+
+    @Override
+    public void run() {
+      try {
+        consume();
+      } catch (Throwable e) {
+        consumerFailure = e;
+        throw e;
+      }
+    }
+
+    private void consume() {
+      long next = 0;
+      int idle = 0;
+      while (true) {
+        long available = highestPublished(next);
+        if (available >= next) {
+          for (long sequence = next; sequence <= available; sequence++) {
+            consume(slots[(int) sequence & mask]);
+          }
+          consumed.lazySet(available);
+          next = available + 1;
+          idle = 0;
+        } else if (!running && senders.get() == 0) {
+          // a sender that saw the strategy running has published by now
+          if (highestPublished(next) < next) {
+            return;
+          }
+        } else {
+          idle = waitFor(next, idle);
+        }
+      }
+    }
+
+    private void consume(List<?> runnableNotifications) {
+      for (int i = index; i < runnableNotifications.size(); i += consumers.length) {
+        runQuietly((Runnable) runnableNotifications.get(i));
+      }
+      // an interrupt by a handler is not meant for the consumer
+      Thread.interrupted();
+    }
+
+    private int waitFor(long sequence, int idle) {
+      switch (waitStrategy) {
+        case BLOCKING:
+          sleepers.incrementAndGet();
+          lock.lock();
+          try {
+            // re-checked after registering as a sleeper, so a concurrent send can't be missed
+            if (running && !isPublished(sequence)) {
+              notificationSent.awaitNanos(MAX_SLEEP_NANOS);
+            }
+          } catch (InterruptedException e) {
+            // consumers stop only when the strategy is closed
+          } finally {
+            lock.unlock();
+            sleepers.decrementAndGet();
+          }
+          return idle;
+        case YIELDING:
+          if (idle < SPINS_BEFORE_YIELD) {
+            return idle + 1;
+          }
+          Thread.yield();
+          return idle;
+        default:
+          return idle;
+      }
+    }
+  }
+}
@@ -0,0 +1,25 @@
+package an.awesome.pipelinr;
+
+import java.util.List;
+
+class Runnables {
+
+  private Runnables() {}
+
+  /**
+   * Runs a handler and ignores its exceptions, for strategies that return before handlers finish,
+   * like {@link ParallelNoWait}, so there is no caller to report exceptions to.
+   */
+  public static void runQuietly(Runnable runnable) {
+    try {
+      runnable.run();
+    } catch (Throwable e) {
+      // exceptions are not captured
+    }
+  }
+
+  /** Runs handlers one after another, ignoring their exceptions. */
+  public static void runQuietly(List<Runnable> runnables) {
+    runnables.forEach(Runnables::runQuietly);
+  }
+}
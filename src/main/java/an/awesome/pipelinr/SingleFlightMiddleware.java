@@ -0,0 +1,99 @@
+package an.awesome.pipelinr;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs one handler at a time for equal {@link Deduplicated} commands. Callers that send a command
+ * equal to one that is still in flight wait for it and receive its result or exception, instead of
+ * running the handler again.
+ *
+ * <p>Commands are compared by {@code equals} and {@code hashCode}, among commands of the same
+ * class. Other commands go straight through.
+ *
+ * <p>Followers wait no longer than their own {@link Deadline}, and fail with {@link
+ * DeadlineExceededException} once it passes, while the leader goes on.
+ *
+ * <p>A handler that sends a command equal to the one it handles, in the same thread, would wait for
+ * itself, so such a send throws {@link IllegalStateException} instead.
+ *
+ * <pre>
+ *   new Pipelinr().with(() -&gt; Stream.of(new SingleFlightMiddleware()));
+ * </pre>
+ */
+public class SingleFlightMiddleware implements Command.Middleware {
+
+  /** Marks commands whose concurrent duplicates can share a result. */
+  public interface Deduplicated {}
+
+  private final ClassValue<ConcurrentMap<Command<?>, Flight>> inFlight =
+      new ClassValue<ConcurrentMap<Command<?>, Flight>>() {
+        @Override
+        protected ConcurrentMap<Command<?>, Flight> computeValue(Class<?> commandType) {
+          return new ConcurrentHashMap<>();
+        }
+      };
+
+  private final LongAdder shared = new LongAdder();
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <R, C extends Command<R>> R invoke(C command, Next<R> next) {
+    if (!(command instanceof Deduplicated)) {
+      return next.invoke();
+    }
+
+    ConcurrentMap<Command<?>, Flight> inFlightOfType = inFlight.get(command.getClass());
+    Flight flight = new Flight();
+    Flight leader = inFlightOfType.putIfAbsent(command, flight);
+    if (leader != null) {
+      if (leader.thread == flight.thread) {
+        throw new IllegalStateException(
+            command + " is sent while an equal command is handled in the same thread");
+      }
+      shared.increment();
+      return (R) join(leader);
+    }
+
+    try {
+      R result = next.invoke();
+      flight.complete(result);
+      return result;
+    } catch (Throwable e) {
+      // including checked exceptions thrown sneakily, so that followers never wait forever
+      flight.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlightOfType.remove(command, flight);
+    }
+  }
+
+  /** Returns the number of sends that received a result of another, concurrent send. */
+  public long shared() {
+    return shared.sum();
+  }
+
+  private static Object join(Flight flight) {
+    try {
+      Deadline.join(flight);
+      return flight.join();
+    } catch (CompletionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw e;
+    }
+  }
+
+  private static class Flight extends CompletableFuture<Object> {
+
+    private final Thread thread = Thread.currentThread();
+  }
+}
@@ -0,0 +1,90 @@
+package an.awesome.pipelinr;
+
+import static an.awesome.pipelinr.Preconditions.checkArgument;
+
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A command whose handler returns results one by one, as a lazy {@link Stream}, so that neither the
+ * handler nor middlewares hold all results at once.
+ *
+ * <p>The stream is closed by whoever consumes it, which closes resources of the handler, such as a
+ * database cursor. If a middleware throws after the handler returned the stream, {@link
+ * Pipeline#send(Command)} and {@link Pipeline#sendAsync(Command)} close it instead, and so does
+ * {@link Pipeline#sendAll(java.util.Collection)}, along with streams of the commands sent before
+ * the failure. Use {@link #forEach(Pipeline, Consumer)} or try-with-resources:
+ *
+ * <pre>
+ *   try (Stream&lt;Order&gt; orders = new ExportOrders().execute(pipeline)) {
+ *     orders.forEach(csv::write);
+ *   }
+ * </pre>
+ *
+ * <p>Command middlewares see the stream when it is returned, before any result is produced. To
+ * observe or transform each result, use {@link ItemMiddleware}. Note that a stream can be consumed
+ * only once, so stream commands must not be cached, deduplicated or hedged.
+ */
+public interface StreamCommand<T> extends Command<Stream<T>> {
+
+  /** Sends this command and passes each result to a given action, then closes the stream. */
+  default void forEach(Pipeline pipeline, Consumer<? super T> action) {
+    checkArgument(action, "Action must not be null");
+    try (Stream<T> results = execute(pipeline)) {
+      results.forEach(action);
+    }
+  }
+
+  /**
+   * Returns a lazy stream of given results that closes a given resource when the stream is closed.
+   */
+  static <T> Stream<T> lazy(Iterator<T> results, AutoCloseable resource) {
+    checkArgument(results, "Results must not be null");
+    checkArgument(resource, "Resource must not be null");
+    return StreamSupport.stream(
+            Spliterators.spliteratorUnknownSize(results, Spliterator.ORDERED), false)
+        .onClose(
+            () -> {
+              try {
+                resource.close();
+              } catch (RuntimeException e) {
+                throw e;
+              } catch (Exception e) {
+                throw new IllegalStateException("Cannot close " + resource, e);
+              }
+            });
+  }
+
+  /** A middleware that runs for each result of a stream command, as the result is consumed. */
+  @FunctionalInterface
+  interface ItemMiddleware {
+
+    /** Returns a given result of a command, or a result to replace it with. */
+    <T, C extends StreamCommand<T>> T invoke(C command, T result);
+
+    /**
+     * Returns a command middleware that runs a given item middleware for each result of stream
+     * commands. Other commands go straight through.
+     */
+    static Command.Middleware perItem(ItemMiddleware middleware) {
+      checkArgument(middleware, "Middleware must not be null");
+      return new Command.Middleware() {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <R, C extends Command<R>> R invoke(C command, Next<R> next) {
+          R results = next.invoke();
+          if (!(command instanceof StreamCommand) || results == null) {
+            return results;
+          }
+          StreamCommand<Object> streamCommand = (StreamCommand<Object>) command;
+          // a mapped stream shares close handlers with the stream of the handler
+          return (R) ((Stream<Object>) results).map(it -> middleware.invoke(streamCommand, it));
+        }
+      };
+    }
+  }
+}
@@ -6,8 +6,4 @@ import java.util.stream.Stream;
 public interface StreamSupplier<T> {
 
   Stream<T> supply();
-
-  default StreamEx<T> supplyEx() {
-    return new StreamEx<>(supply());
-  }
 }
@@ -0,0 +1,196 @@
+package an.awesome.pipelinr;
+
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import an.awesome.pipelinr.BoundedParallelNoWait.Overflow;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class BoundedParallelNoWaitTest {
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(4);
+  private final CountDownLatch release = new CountDownLatch(1);
+  private final List<String> handled = new CopyOnWriteArrayList<>();
+
+  @AfterEach
+  void tearDown() throws InterruptedException {
+    release.countDown();
+    executor.shutdown();
+    executor.awaitTermination(5, SECONDS);
+  }
+
+  @Test
+  void runsAllHandlersEventually() throws InterruptedException {
+    // given
+    BoundedParallelNoWait strategy = new BoundedParallelNoWait(executor, 100, 2, Overflow.BLOCK);
+    CountDownLatch done = new CountDownLatch(50);
+
+    // when
+    for (int i = 0; i < 50; i++) {
+      strategy.handle(asList(done::countDown));
+    }
+
+    // then
+    assertThat(done.await(5, SECONDS)).isTrue();
+    assertThat(strategy.sojournTime().count()).isEqualTo(50);
+    assertThat(strategy.queueDepth()).isZero();
+  }
+
+  @Test
+  void rejectsHandlersWhenQueueIsFull() throws InterruptedException {
+    // given
+    BoundedParallelNoWait strategy = new BoundedParallelNoWait(executor, 2, 1, Overflow.REJECT);
+    occupyWorker(strategy);
+
+    // when
+    strategy.handle(asList(() -> handled.add("1"), () -> handled.add("2")));
+    Throwable e =
+        assertThrows(
+            NotificationRejectedException.class,
+            () -> strategy.handle(asList(() -> handled.add("3"))));
+
+    // then
+    assertThat(e).hasMessage("Cannot queue a notification handler, all 2 slot(s) are taken");
+    assertThat(strategy.rejected()).isEqualTo(1);
+    assertThat(strategy.queueDepth()).isEqualTo(2);
+  }
+
+  @Test
+  void rejectsAllHandlersOfNotificationThatDoesNotFit() throws InterruptedException {
+    // given
+    BoundedParallelNoWait strategy = new BoundedParallelNoWait(executor, 2, 1, Overflow.REJECT);
+    occupyWorker(strategy);
+
+    // when
+    assertThrows(
+        NotificationRejectedException.class,
+        () ->
+            strategy.handle(
+                asList(() -> handled.add("1"), () -> handled.add("2"), () -> handled.add("3"))));
+    release.countDown();
+
+    // then
+    assertThat(strategy.rejected()).isEqualTo(3);
+    assertThat(strategy.queueDepth()).isZero();
+    Thread.sleep(10);
+    assertThat(handled).isEmpty();
+  }
+
+  @Test
+  void keepsRunningQueuedHandlersAfterHandlerThrowsError() throws InterruptedException {
+    // given
+    BoundedParallelNoWait strategy = new BoundedParallelNoWait(executor, 10, 1, Overflow.BLOCK);
+    occupyWorker(strategy);
+
+    // when
+    strategy.handle(
+        asList(
+            () -> {
+              throw new AssertionError("Handler failed");
+            }));
+    strategy.handle(asList(() -> handled.add("after error")));
+    release.countDown();
+
+    // then
+    await(() -> handled.size() == 1);
+    assertThat(strategy.queueDepth()).isZero();
+  }
+
+  @Test
+  void dropsOldestHandlersWhenQueueIsFull() throws InterruptedException {
+    // given
+    BoundedParallelNoWait strategy =
+        new BoundedParallelNoWait(executor, 2, 1, Overflow.DROP_OLDEST);
+    occupyWorker(strategy);
+
+    // when
+    strategy.handle(asList(() -> handled.add("1"), () -> handled.add("2"), () -> handled.add("3")));
+    release.countDown();
+
+    // then
+    await(() -> handled.size() == 2);
+    assertThat(handled).containsExactly("2", "3");
+    assertThat(strategy.dropped()).isEqualTo(1);
+  }
+
+  @Test
+  void runsHandlersOnCallerWhenQueueIsFull() throws InterruptedException {
+    // given
+    BoundedParallelNoWait strategy =
+        new BoundedParallelNoWait(executor, 1, 1, Overflow.CALLER_RUNS);
+    occupyWorker(strategy);
+    Thread caller = Thread.currentThread();
+    List<Thread> threads = new CopyOnWriteArrayList<>();
+
+    // when
+    strategy.handle(asList(() -> threads.add(Thread.currentThread()), () -> threads.add(caller)));
+
+    // then
+    assertThat(threads).containsExactly(caller);
+    assertThat(strategy.queueDepth()).isEqualTo(1);
+  }
+
+  @Test
+  void shedsHandlersThatWaitedTooLong() throws InterruptedException {
+    // given
+    BoundedParallelNoWait strategy =
+        new BoundedParallelNoWait(
+            executor, 1000, 1, Overflow.BLOCK, Duration.ofNanos(1), Duration.ofNanos(1));
+    occupyWorker(strategy);
+
+    // when
+    for (int i = 0; i < 100; i++) {
+      strategy.handle(asList(() -> handled.add("handled")));
+    }
+    Thread.sleep(10);
+    release.countDown();
+
+    // then
+    await(() -> handled.size() + strategy.shed() == 100);
+    assertThat(strategy.shed()).isPositive();
+    assertThat(handled.size() + strategy.shed()).isEqualTo(100);
+  }
+
+  @Test
+  void rejectsInvalidLimits() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new BoundedParallelNoWait(executor, 0, 1, Overflow.BLOCK));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new BoundedParallelNoWait(executor, 1, 0, Overflow.BLOCK));
+  }
+
+  private void occupyWorker(BoundedParallelNoWait strategy) throws InterruptedException {
+    CountDownLatch started = new CountDownLatch(1);
+    strategy.handle(
+        asList(
+            () -> {
+              started.countDown();
+              try {
+                release.await();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            }));
+    assertThat(started.await(5, SECONDS)).isTrue();
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + SECONDS.toNanos(5);
+    while (!condition.getAsBoolean()) {
+      assertThat(System.nanoTime() - deadline).isNegative();
+      Thread.sleep(1);
+    }
+  }
+}
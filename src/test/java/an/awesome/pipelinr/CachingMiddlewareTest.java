@@ -0,0 +1,335 @@
+package an.awesome.pipelinr;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+class CachingMiddlewareTest {
+
+  private final AtomicLong now = new AtomicLong();
+  private final AtomicInteger handled = new AtomicInteger();
+  private final List<Runnable> refreshes = new ArrayList<>();
+
+  @Test
+  void cachesResultsOfCacheableCommands() {
+    // given
+    CachingMiddleware cache =
+        new CachingMiddleware(100, Duration.ofMinutes(1), null, null, now::get);
+    Pipeline pipeline = pipeline(cache);
+
+    // when
+    String first = new GetPrice("ACME").execute(pipeline);
+    String second = new GetPrice("ACME").execute(pipeline);
+    new GetPrice("INITECH").execute(pipeline);
+
+    // then
+    assertThat(first).isEqualTo("ACME 1");
+    assertThat(second).isEqualTo("ACME 1");
+    assertThat(handled).hasValue(2);
+    assertThat(cache.hits()).isEqualTo(1);
+    assertThat(cache.misses()).isEqualTo(2);
+    assertThat(cache.hitRatio()).isEqualTo(1 / 3.0);
+  }
+
+  @Test
+  void doesNotCacheOtherCommands() {
+    // given
+    CachingMiddleware cache = new CachingMiddleware(100, Duration.ofMinutes(1));
+    Pipeline pipeline = pipeline(cache);
+
+    // when
+    new BuyStock("ACME").execute(pipeline);
+    new BuyStock("ACME").execute(pipeline);
+
+    // then
+    assertThat(handled).hasValue(2);
+    assertThat(cache.size()).isZero();
+  }
+
+  @Test
+  void doesNotCacheExceptions() {
+    // given
+    CachingMiddleware cache = new CachingMiddleware(100, Duration.ofMinutes(1));
+    Pipeline pipeline = pipeline(cache);
+
+    // when
+    assertThrows(IllegalStateException.class, () -> new GetPrice("FAIL").execute(pipeline));
+    assertThrows(IllegalStateException.class, () -> new GetPrice("FAIL").execute(pipeline));
+
+    // then
+    assertThat(handled).hasValue(2);
+    assertThat(cache.size()).isZero();
+  }
+
+  @Test
+  void expiresResultsAfterTtl() {
+    // given
+    CachingMiddleware cache =
+        new CachingMiddleware(100, Duration.ofSeconds(10), null, null, now::get);
+    Pipeline pipeline = pipeline(cache);
+    new GetPrice("ACME").execute(pipeline);
+
+    // when
+    now.addAndGet(Duration.ofSeconds(10).toNanos());
+    String price = new GetPrice("ACME").execute(pipeline);
+
+    // then
+    assertThat(price).isEqualTo("ACME 2");
+  }
+
+  @Test
+  void refreshesResultsAheadOfExpiry() {
+    // given
+    Executor executor = refreshes::add;
+    CachingMiddleware cache =
+        new CachingMiddleware(
+            100, Duration.ofSeconds(10), Duration.ofSeconds(5), executor, now::get);
+    Pipeline pipeline = pipeline(cache);
+    new GetPrice("ACME").execute(pipeline);
+    now.addAndGet(Duration.ofSeconds(6).toNanos());
+
+    // when
+    String stale = new GetPrice("ACME").execute(pipeline);
+    new GetPrice("ACME").execute(pipeline);
+    int refreshesQueued = refreshes.size();
+    refreshes.forEach(Runnable::run);
+    now.addAndGet(Duration.ofSeconds(6).toNanos());
+    String refreshed = new GetPrice("ACME").execute(pipeline);
+
+    // then
+    assertThat(stale).isEqualTo("ACME 1");
+    assertThat(refreshesQueued).isEqualTo(1);
+    assertThat(refreshed).isEqualTo("ACME 2");
+  }
+
+  @Test
+  void invalidatesResultsOnNotifications() {
+    // given
+    CachingMiddleware cache = new CachingMiddleware(100, Duration.ofMinutes(1));
+    Pipeline pipeline =
+        new Pipelinr()
+            .with(() -> Stream.of(new GetPriceHandler(), new BuyStockHandler()))
+            .with(() -> Stream.of(cache))
+            .with(
+                () ->
+                    Stream.of(
+                        cache.invalidateOn(PriceChanged.class, it -> new GetPrice(it.symbol)),
+                        cache.invalidateAllOn(MarketClosed.class, GetPrice.class)));
+    new GetPrice("ACME").execute(pipeline);
+    new GetPrice("INITECH").execute(pipeline);
+
+    // when
+    new PriceChanged("ACME").send(pipeline);
+
+    // then
+    assertThat(new GetPrice("ACME").execute(pipeline)).isEqualTo("ACME 3");
+    assertThat(new GetPrice("INITECH").execute(pipeline)).isEqualTo("INITECH 2");
+
+    // when
+    new MarketClosed().send(pipeline);
+
+    // then
+    assertThat(cache.size()).isZero();
+  }
+
+  @Test
+  void doesNotCacheResultsComputedWhileInvalidated() {
+    // given
+    CachingMiddleware cache = new CachingMiddleware(100, Duration.ofMinutes(1));
+    class InvalidatingHandler implements Command.Handler<GetPrice, String> {
+      @Override
+      public String handle(GetPrice command) {
+        // the price changes while it is read
+        cache.invalidate(command);
+        return command.symbol + " " + handled.incrementAndGet();
+      }
+    }
+    Pipeline pipeline =
+        new Pipelinr()
+            .with(() -> Stream.of(new InvalidatingHandler()))
+            .with(() -> Stream.of(cache));
+
+    // when
+    String first = new GetPrice("ACME").execute(pipeline);
+    String second = new GetPrice("ACME").execute(pipeline);
+
+    // then
+    assertThat(first).isEqualTo("ACME 1");
+    assertThat(second).isEqualTo("ACME 2");
+    assertThat(cache.size()).isZero();
+  }
+
+  @Test
+  void cachesResultsComputedWhileOtherCommandsAreInvalidated() {
+    // given
+    CachingMiddleware cache = new CachingMiddleware(100, Duration.ofMinutes(1));
+    class InvalidatingHandler implements Command.Handler<GetPrice, String> {
+      @Override
+      public String handle(GetPrice command) {
+        // another price changes meanwhile
+        cache.invalidate(new GetPrice("INITECH"));
+        return command.symbol + " " + handled.incrementAndGet();
+      }
+    }
+    Pipeline pipeline =
+        new Pipelinr()
+            .with(() -> Stream.of(new InvalidatingHandler()))
+            .with(() -> Stream.of(cache));
+
+    // when
+    String first = new GetPrice("ACME").execute(pipeline);
+    String second = new GetPrice("ACME").execute(pipeline);
+
+    // then
+    assertThat(first).isEqualTo("ACME 1");
+    assertThat(second).isEqualTo("ACME 1");
+    assertThat(cache.size()).isEqualTo(1);
+  }
+
+  @Test
+  void doesNotCacheResultsComputedWhileTheirClassIsInvalidated() {
+    // given
+    CachingMiddleware cache = new CachingMiddleware(100, Duration.ofMinutes(1));
+    class InvalidatingHandler implements Command.Handler<GetPrice, String> {
+      @Override
+      public String handle(GetPrice command) {
+        // the market closes while the price is read
+        cache.invalidateAll(GetPrice.class);
+        return command.symbol + " " + handled.incrementAndGet();
+      }
+    }
+    Pipeline pipeline =
+        new Pipelinr()
+            .with(() -> Stream.of(new InvalidatingHandler()))
+            .with(() -> Stream.of(cache));
+
+    // when
+    new GetPrice("ACME").execute(pipeline);
+
+    // then
+    assertThat(cache.size()).isZero();
+  }
+
+  @Test
+  void dropsRefreshedResultsOfInvalidatedEntries() {
+    // given
+    Executor executor = refreshes::add;
+    CachingMiddleware cache =
+        new CachingMiddleware(
+            100, Duration.ofSeconds(10), Duration.ofSeconds(5), executor, now::get);
+    Pipeline pipeline = pipeline(cache);
+    new GetPrice("ACME").execute(pipeline);
+    now.addAndGet(Duration.ofSeconds(6).toNanos());
+    new GetPrice("ACME").execute(pipeline);
+
+    // when
+    cache.invalidate(new GetPrice("ACME"));
+    refreshes.forEach(Runnable::run);
+
+    // then
+    assertThat(cache.size()).isZero();
+    assertThat(new GetPrice("ACME").execute(pipeline)).isEqualTo("ACME 3");
+  }
+
+  @Test
+  void keepsFrequentlyRequestedResultsWhenScannedByOneOffs() {
+    // given
+    CachingMiddleware cache = new CachingMiddleware(100, Duration.ofMinutes(1));
+    Pipeline pipeline = pipeline(cache);
+    int oneOff = 0;
+
+    // when
+    long popularMisses = 0;
+    for (int round = 0; round < 50; round++) {
+      long missesBefore = cache.misses();
+      for (int popular = 0; popular < 20; popular++) {
+        new GetPrice("POPULAR " + popular).execute(pipeline);
+      }
+      if (round >= 5) {
+        popularMisses += cache.misses() - missesBefore;
+      }
+      // more one-offs than fit in the cache, so LRU would evict every popular result
+      for (int i = 0; i < 200; i++) {
+        new GetPrice("ONE-OFF " + oneOff++).execute(pipeline);
+      }
+    }
+
+    // then
+    assertThat(cache.size()).isEqualTo(100);
+    assertThat(cache.evictions()).isGreaterThanOrEqualTo(20 + oneOff - 100);
+    assertThat(popularMisses).isLessThan(20);
+  }
+
+  private Pipeline pipeline(CachingMiddleware cache) {
+    return new Pipelinr()
+        .with(() -> Stream.of(new GetPriceHandler(), new BuyStockHandler()))
+        .with(() -> Stream.of(cache));
+  }
+
+  static class GetPrice implements Command<String>, CachingMiddleware.Cacheable {
+
+    private final String symbol;
+
+    GetPrice(String symbol) {
+      this.symbol = symbol;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof GetPrice && ((GetPrice) o).symbol.equals(symbol);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(symbol);
+    }
+  }
+
+  static class BuyStock implements Command<String> {
+
+    private final String symbol;
+
+    BuyStock(String symbol) {
+      this.symbol = symbol;
+    }
+  }
+
+  static class PriceChanged implements Notification {
+
+    private final String symbol;
+
+    PriceChanged(String symbol) {
+      this.symbol = symbol;
+    }
+  }
+
+  static class MarketClosed implements Notification {}
+
+  class GetPriceHandler implements Command.Handler<GetPrice, String> {
+    @Override
+    public String handle(GetPrice command) {
+      int count = handled.incrementAndGet();
+      if (command.symbol.equals("FAIL")) {
+        throw new IllegalStateException("No price");
+      }
+      return command.symbol + " " + count;
+    }
+  }
+
+  class BuyStockHandler implements Command.Handler<BuyStock, String> {
+    @Override
+    public String handle(BuyStock command) {
+      handled.incrementAndGet();
+      return "Bought " + command.symbol;
+    }
+  }
+}
@@ -0,0 +1,263 @@
+package an.awesome.pipelinr;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import an.awesome.pipelinr.CircuitBreakers.State;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+class CircuitBreakersTest {
+
+  private final AtomicInteger handled = new AtomicInteger();
+  private final AtomicBoolean failing = new AtomicBoolean(true);
+
+  @Test
+  void opensCircuitOnceFailureRateReachesThreshold() {
+    // given
+    CircuitBreakers circuitBreakers = new CircuitBreakers(0.5, 10, 4, Duration.ofSeconds(30), 5);
+    Pipeline pipeline = pipeline(circuitBreakers);
+    failing.set(false);
+    new Ping().execute(pipeline);
+    new Ping().execute(pipeline);
+    failing.set(true);
+
+    // when
+    for (int i = 0; i < 2; i++) {
+      assertThrows(IllegalStateException.class, () -> new Ping().execute(pipeline));
+    }
+    Throwable e =
+        assertThrows(CircuitBreakerOpenException.class, () -> new Ping().execute(pipeline));
+
+    // then
+    assertThat(e).hasMessage("Circuit breaker of Pong handler is open");
+    assertThat(circuitBreakers.state(Pong.class)).isEqualTo(State.OPEN);
+    assertThat(handled).hasValue(4);
+  }
+
+  @Test
+  void opensCircuitOnceSlowCallRateReachesThreshold() {
+    // given
+    failing.set(false);
+    CircuitBreakers circuitBreakers =
+        new CircuitBreakers(0.5, Duration.ZERO, 1, 10, 3, Duration.ofSeconds(30), 5, e -> true);
+    Pipeline pipeline = pipeline(circuitBreakers);
+
+    // when
+    for (int i = 0; i < 3; i++) {
+      new Ping().execute(pipeline);
+    }
+
+    // then
+    assertThrows(CircuitBreakerOpenException.class, () -> new Ping().execute(pipeline));
+    assertThat(handled).hasValue(3);
+  }
+
+  @Test
+  void closesCircuitOnceProbesSucceed() {
+    // given
+    CircuitBreakers circuitBreakers = new CircuitBreakers(0.5, 2, 2, Duration.ZERO, 2);
+    Pipeline pipeline = pipeline(circuitBreakers);
+    for (int i = 0; i < 2; i++) {
+      assertThrows(IllegalStateException.class, () -> new Ping().execute(pipeline));
+    }
+    assertThat(circuitBreakers.state(Pong.class)).isEqualTo(State.HALF_OPEN);
+
+    // when
+    failing.set(false);
+    new Ping().execute(pipeline);
+    new Ping().execute(pipeline);
+
+    // then
+    assertThat(circuitBreakers.state(Pong.class)).isEqualTo(State.CLOSED);
+  }
+
+  @Test
+  void opensCircuitAgainOnceProbeFails() {
+    // given
+    CircuitBreakers circuitBreakers = new CircuitBreakers(0.5, 2, 2, Duration.ofMillis(50), 2);
+    Pipeline pipeline = pipeline(circuitBreakers);
+    for (int i = 0; i < 2; i++) {
+      assertThrows(IllegalStateException.class, () -> new Ping().execute(pipeline));
+    }
+    await(() -> circuitBreakers.state(Pong.class) == State.HALF_OPEN);
+
+    // when
+    assertThrows(IllegalStateException.class, () -> new Ping().execute(pipeline));
+
+    // then
+    assertThat(circuitBreakers.state(Pong.class)).isEqualTo(State.OPEN);
+    assertThrows(CircuitBreakerOpenException.class, () -> new Ping().execute(pipeline));
+    assertThat(handled).hasValue(3);
+  }
+
+  @Test
+  void opensCircuitAgainOnceProbesTimeOut() throws Exception {
+    // given
+    CountDownLatch release = new CountDownLatch(1);
+    class HangingPong implements Command.Handler<Ping, String> {
+      @Override
+      public String handle(Ping command) {
+        handled.incrementAndGet();
+        if (failing.get()) {
+          throw new IllegalStateException("Boom");
+        }
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return "Pong";
+      }
+    }
+    CircuitBreakers circuitBreakers = new CircuitBreakers(0.5, 1, 1, Duration.ofMillis(50), 1);
+    Pipeline pipeline =
+        new Pipelinr().with(() -> Stream.of(new HangingPong())).with(circuitBreakers);
+    assertThrows(IllegalStateException.class, () -> new Ping().execute(pipeline));
+    await(() -> circuitBreakers.state(HangingPong.class) == State.HALF_OPEN);
+    failing.set(false);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      executor.submit(() -> new Ping().execute(pipeline));
+      await(() -> handled.get() == 2);
+
+      // when
+      Thread.sleep(60);
+
+      // then
+      assertThat(circuitBreakers.state(HangingPong.class)).isEqualTo(State.OPEN);
+      assertThrows(CircuitBreakerOpenException.class, () -> new Ping().execute(pipeline));
+      await(() -> circuitBreakers.state(HangingPong.class) == State.HALF_OPEN);
+    } finally {
+      release.countDown();
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void countsOnlyFailuresThatPredicateAccepts() {
+    // given
+    CircuitBreakers circuitBreakers =
+        new CircuitBreakers(
+            0.5,
+            Duration.ofSeconds(1),
+            1,
+            2,
+            2,
+            Duration.ofSeconds(30),
+            1,
+            e -> !(e instanceof IllegalStateException));
+    Pipeline pipeline = pipeline(circuitBreakers);
+
+    // when
+    for (int i = 0; i < 3; i++) {
+      assertThrows(IllegalStateException.class, () -> new Ping().execute(pipeline));
+    }
+
+    // then
+    assertThat(circuitBreakers.state(Pong.class)).isEqualTo(State.CLOSED);
+    assertThat(handled).hasValue(3);
+  }
+
+  @Test
+  void doesNotCountExceededDeadlinesAsFailuresByDefault() {
+    // given
+    class LatePong implements Command.Handler<Ping, String> {
+      @Override
+      public String handle(Ping command) {
+        handled.incrementAndGet();
+        throw new DeadlineExceededException();
+      }
+    }
+    CircuitBreakers circuitBreakers = new CircuitBreakers(0.5, 1, 1, Duration.ofSeconds(30), 1);
+    Pipeline pipeline = new Pipelinr().with(() -> Stream.of(new LatePong())).with(circuitBreakers);
+
+    // when
+    for (int i = 0; i < 2; i++) {
+      assertThrows(DeadlineExceededException.class, () -> new Ping().execute(pipeline));
+    }
+
+    // then
+    assertThat(circuitBreakers.state(LatePong.class)).isEqualTo(State.CLOSED);
+    assertThat(handled).hasValue(2);
+  }
+
+  @Test
+  void guardsNotificationHandlers() {
+    // given
+    CircuitBreakers circuitBreakers = new CircuitBreakers(0.5, 1, 1, Duration.ofSeconds(30), 5);
+    Pipeline pipeline = pipeline(circuitBreakers);
+    assertThrows(AggregateException.class, () -> new Pinged().send(pipeline));
+
+    // when
+    AggregateException e =
+        assertThrows(AggregateException.class, () -> new Pinged().send(pipeline));
+
+    // then
+    assertThat(e.exceptions()).hasSize(1).allMatch(it -> it instanceof CircuitBreakerOpenException);
+    assertThat(circuitBreakers.state(OnPinged.class)).isEqualTo(State.OPEN);
+    assertThat(handled).hasValue(1);
+  }
+
+  @Test
+  void guardsHandlersOfCommandsSentAsynchronously() {
+    // given
+    CircuitBreakers circuitBreakers = new CircuitBreakers(0.5, 1, 1, Duration.ofSeconds(30), 5);
+    Pipeline pipeline = pipeline(circuitBreakers).build();
+    pipeline.sendAsync(new Ping());
+
+    // when
+    Throwable e =
+        assertThrows(
+            Exception.class, () -> pipeline.sendAsync(new Ping()).toCompletableFuture().join());
+
+    // then
+    assertThat(e).hasCauseInstanceOf(CircuitBreakerOpenException.class);
+  }
+
+  private Pipelinr pipeline(CircuitBreakers circuitBreakers) {
+    return new Pipelinr()
+        .with(() -> Stream.of(new Pong()))
+        .with(() -> Stream.of(new OnPinged()))
+        .with(ContinueOnException::new)
+        .with(circuitBreakers);
+  }
+
+  private static void await(BooleanSupplier condition) {
+    long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+    while (!condition.getAsBoolean()) {
+      assertThat(System.nanoTime() - deadline).isNegative();
+      Thread.yield();
+    }
+  }
+
+  static class Ping implements Command<String> {}
+
+  static class Pinged implements Notification {}
+
+  class Pong implements Command.Handler<Ping, String> {
+    @Override
+    public String handle(Ping command) {
+      handled.incrementAndGet();
+      if (failing.get()) {
+        throw new IllegalStateException("Boom");
+      }
+      return "Pong";
+    }
+  }
+
+  class OnPinged implements Notification.Handler<Pinged> {
+    @Override
+    public void handle(Pinged notification) {
+      handled.incrementAndGet();
+      throw new IllegalStateException("Boom");
+    }
+  }
+}
@@ -0,0 +1,147 @@
+package an.awesome.pipelinr;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+class CompiledPipelineTest {
+
+  private final List<String> invoked = new ArrayList<>();
+
+  @Test
+  void sendsCommandsAndNotificationsThroughMiddlewares() {
+    // given
+    Pipeline pipeline =
+        new Pipelinr()
+            .with(() -> Stream.of(new Pong()))
+            .with(() -> Stream.of(new OnPinged()))
+            .with(() -> Stream.of(new CommandMiddleware()))
+            .with(() -> Stream.of(new NotificationMiddleware()))
+            .build();
+
+    // when
+    String pong = new Ping().execute(pipeline);
+    new Pinged().send(pipeline);
+
+    // then
+    assertThat(pong).isEqualTo("Pong");
+    assertThat(invoked)
+        .containsExactly("CommandMiddleware", "Pong", "NotificationMiddleware", "OnPinged");
+  }
+
+  @Test
+  void obtainsHandlersMiddlewaresAndStrategyOnce() {
+    // given
+    AtomicInteger supplies = new AtomicInteger();
+    Pipeline pipeline =
+        new Pipelinr()
+            .with(
+                (CommandHandlers)
+                    () -> {
+                      supplies.incrementAndGet();
+                      return Stream.of(new Pong());
+                    })
+            .with(
+                (NotificationHandlers)
+                    () -> {
+                      supplies.incrementAndGet();
+                      return Stream.of(new OnPinged());
+                    })
+            .with(
+                (Command.Middlewares)
+                    () -> {
+                      supplies.incrementAndGet();
+                      return Stream.of(new CommandMiddleware());
+                    })
+            .with(
+                () -> {
+                  supplies.incrementAndGet();
+                  return new StopOnException();
+                })
+            .build();
+    int suppliesOnBuild = supplies.get();
+
+    // when
+    for (int i = 0; i < 3; i++) {
+      new Ping().execute(pipeline);
+      new Pinged().send(pipeline);
+      pipeline.sendAll(asList(new Ping(), new Ping()));
+      pipeline.sendAsync(new Ping());
+    }
+
+    // then
+    assertThat(supplies).hasValue(suppliesOnBuild);
+  }
+
+  @Test
+  void isNotAffectedByLaterChanges() {
+    // given
+    Pipelinr pipelinr = new Pipelinr().with(() -> Stream.of(new Pong()));
+    Pipeline pipeline = pipelinr.build();
+
+    // when
+    pipelinr.with((CommandHandlers) Stream::empty);
+
+    // then
+    assertThat(new Ping().execute(pipeline)).isEqualTo("Pong");
+  }
+
+  @Test
+  void keepsCustomRouters() {
+    // given
+    class NoRoutes implements Command.Router {
+      @Override
+      public <C extends Command<R>, R> Command.Handler<C, R> route(C command) {
+        throw new CommandHandlerNotFoundException(command);
+      }
+    }
+
+    // and
+    Pipeline pipeline =
+        new Pipelinr().with(() -> Stream.of(new Pong())).with(new NoRoutes()).build();
+
+    // expect
+    assertThrows(CommandHandlerNotFoundException.class, () -> new Ping().execute(pipeline));
+  }
+
+  static class Ping implements Command<String> {}
+
+  static class Pinged implements Notification {}
+
+  class Pong implements Command.Handler<Ping, String> {
+    @Override
+    public String handle(Ping command) {
+      invoked.add("Pong");
+      return "Pong";
+    }
+  }
+
+  class OnPinged implements Notification.Handler<Pinged> {
+    @Override
+    public void handle(Pinged notification) {
+      invoked.add("OnPinged");
+    }
+  }
+
+  class CommandMiddleware implements Command.Middleware {
+    @Override
+    public <R, C extends Command<R>> R invoke(C command, Next<R> next) {
+      invoked.add("CommandMiddleware");
+      return next.invoke();
+    }
+  }
+
+  class NotificationMiddleware implements Notification.Middleware {
+    @Override
+    public <N extends Notification> void invoke(N notification, Next next) {
+      invoked.add("NotificationMiddleware");
+      next.invoke();
+    }
+  }
+}
@@ -0,0 +1,230 @@
+package an.awesome.pipelinr;
+
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class ConcurrencyLimitMiddlewareTest {
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(4);
+  private final CountDownLatch started = new CountDownLatch(2);
+  private final CountDownLatch release = new CountDownLatch(1);
+  private final ConcurrencyLimitMiddleware limiter = new ConcurrencyLimitMiddleware(2, 1, 10);
+  private final Pipeline pipeline =
+      new Pipelinr()
+          .with(() -> Stream.of(new SlowHandler(), new FastHandler()))
+          .with(() -> Stream.of(limiter));
+
+  @AfterEach
+  void tearDown() {
+    release.countDown();
+    executor.shutdownNow();
+  }
+
+  @Test
+  void rejectsCommandsOverTheLimitOfTheirClass() throws Exception {
+    // given
+    Future<String> first = executor.submit(() -> new Slow().execute(pipeline));
+    Future<String> second = executor.submit(() -> new Slow().execute(pipeline));
+    assertThat(started.await(5, SECONDS)).isTrue();
+
+    // when
+    Throwable e =
+        assertThrows(ConcurrencyLimitExceededException.class, () -> new Slow().execute(pipeline));
+    String fast = new Fast().execute(pipeline);
+
+    // then
+    assertThat(e)
+        .hasMessage("Cannot send Slow command, 2 command(s) of this class are already in flight");
+    assertThat(fast).isEqualTo("Fast");
+    assertThat(limiter.inFlight(Slow.class)).isEqualTo(2);
+    assertThat(limiter.rejected()).isEqualTo(1);
+
+    // when
+    release.countDown();
+
+    // then
+    assertThat(first.get(5, SECONDS)).isEqualTo("Slow");
+    assertThat(second.get(5, SECONDS)).isEqualTo("Slow");
+    assertThat(limiter.inFlight(Slow.class)).isZero();
+  }
+
+  @Test
+  void growsLimitWhileLatencyIsSteady() {
+    // given
+    ConcurrencyLimitMiddleware.Limiter limiter = new ConcurrencyLimitMiddleware.Limiter(10, 1, 100);
+
+    // when
+    for (int i = 0; i < 100; i++) {
+      limiter.onSample(1_000_000, limiter.limit());
+    }
+
+    // then
+    assertThat(limiter.limit()).isEqualTo(100);
+  }
+
+  @Test
+  void shrinksLimitWhenLatencyRises() {
+    // given
+    ConcurrencyLimitMiddleware.Limiter limiter = new ConcurrencyLimitMiddleware.Limiter(50, 1, 100);
+    for (int i = 0; i < 100; i++) {
+      limiter.onSample(1_000_000, limiter.limit());
+    }
+
+    // when
+    for (int i = 0; i < 20; i++) {
+      limiter.onSample(10_000_000, limiter.limit());
+    }
+
+    // then
+    assertThat(limiter.limit()).isLessThan(50);
+  }
+
+  @Test
+  void doesNotGrowLimitWhileMostOfItIsUnused() {
+    // given
+    ConcurrencyLimitMiddleware.Limiter limiter = new ConcurrencyLimitMiddleware.Limiter(10, 1, 100);
+
+    // when
+    for (int i = 0; i < 100; i++) {
+      limiter.onSample(1_000_000, 1);
+    }
+
+    // then
+    assertThat(limiter.limit()).isEqualTo(10);
+  }
+
+  @Test
+  void cutsLimitWhenSendTimesOut() {
+    // given
+    ConcurrencyLimitMiddleware limiter = new ConcurrencyLimitMiddleware(10, 1, 100);
+    Pipeline pipeline =
+        new Pipelinr().with(() -> Stream.of(new TimingOutHandler())).with(() -> Stream.of(limiter));
+
+    // when
+    assertThrows(DeadlineExceededException.class, () -> new TimingOut().execute(pipeline));
+
+    // then
+    assertThat(limiter.limit(TimingOut.class)).isEqualTo(9);
+    assertThat(limiter.inFlight(TimingOut.class)).isZero();
+  }
+
+  @Test
+  void keepsLimitWhenSendFailsOtherwise() {
+    // given
+    ConcurrencyLimitMiddleware limiter = new ConcurrencyLimitMiddleware(10, 1, 100);
+    Pipeline pipeline =
+        new Pipelinr().with(() -> Stream.of(new FailingHandler())).with(() -> Stream.of(limiter));
+
+    // when
+    assertThrows(IllegalStateException.class, () -> new Failing().execute(pipeline));
+
+    // then
+    assertThat(limiter.limit(Failing.class)).isEqualTo(10);
+    assertThat(limiter.inFlight(Failing.class)).isZero();
+  }
+
+  @Test
+  void doesNotCutLimitBelowMinimum() {
+    // given
+    ConcurrencyLimitMiddleware.Limiter limiter = new ConcurrencyLimitMiddleware.Limiter(10, 2, 100);
+
+    // when
+    for (int i = 0; i < 20; i++) {
+      limiter.onDrop();
+    }
+
+    // then
+    assertThat(limiter.limit()).isEqualTo(2);
+  }
+
+  @Test
+  void doesNotLimitBatches() throws Exception {
+    // given
+    class SlowBatchHandler implements Command.BatchHandler<Slow, String> {
+      @Override
+      public List<String> handleAll(List<Slow> commands) {
+        started.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return commands.stream().map(it -> "Slow").collect(toList());
+      }
+    }
+    ConcurrencyLimitMiddleware limiter = new ConcurrencyLimitMiddleware(1, 1, 1);
+    Pipeline pipeline =
+        new Pipelinr().with(() -> Stream.of(new SlowBatchHandler())).with(() -> Stream.of(limiter));
+
+    // when
+    Future<List<String>> first = executor.submit(() -> pipeline.sendAll(asList(new Slow())));
+    Future<List<String>> second = executor.submit(() -> pipeline.sendAll(asList(new Slow())));
+
+    // then
+    assertThat(started.await(5, SECONDS)).isTrue();
+    release.countDown();
+    assertThat(first.get(5, SECONDS)).containsExactly("Slow");
+    assertThat(second.get(5, SECONDS)).containsExactly("Slow");
+    assertThat(limiter.rejected()).isZero();
+  }
+
+  @Test
+  void rejectsInvalidLimits() {
+    assertThrows(IllegalArgumentException.class, () -> new ConcurrencyLimitMiddleware(0, 0, 10));
+    assertThrows(IllegalArgumentException.class, () -> new ConcurrencyLimitMiddleware(20, 1, 10));
+  }
+
+  static class Slow implements Command<String> {}
+
+  static class Fast implements Command<String> {}
+
+  static class TimingOut implements Command<String> {}
+
+  static class Failing implements Command<String> {}
+
+  class SlowHandler implements Command.Handler<Slow, String> {
+    @Override
+    public String handle(Slow command) {
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return "Slow";
+    }
+  }
+
+  static class FastHandler implements Command.Handler<Fast, String> {
+    @Override
+    public String handle(Fast command) {
+      return "Fast";
+    }
+  }
+
+  static class TimingOutHandler implements Command.Handler<TimingOut, String> {
+    @Override
+    public String handle(TimingOut command) {
+      throw new DeadlineExceededException();
+    }
+  }
+
+  static class FailingHandler implements Command.Handler<Failing, String> {
+    @Override
+    public String handle(Failing command) {
+      throw new IllegalStateException("Invalid");
+    }
+  }
+}
@@ -0,0 +1,140 @@
+package an.awesome.pipelinr;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class ConflatingNoWaitTest {
+
+  private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(4);
+  private final CountDownLatch started = new CountDownLatch(1);
+  private final CountDownLatch release = new CountDownLatch(1);
+  private final List<String> handled = new CopyOnWriteArrayList<>();
+
+  @AfterEach
+  void tearDown() throws InterruptedException {
+    release.countDown();
+    executor.shutdown();
+    executor.awaitTermination(5, SECONDS);
+  }
+
+  @Test
+  void deliversOnlyTheLatestOfWaitingNotificationsPerKey() throws InterruptedException {
+    // given
+    ConflatingNoWait strategy = new ConflatingNoWait(executor, it -> ((PriceTick) it).symbol);
+    Pipeline pipeline =
+        new Pipelinr().with(() -> Stream.of(new OnPriceTick())).with(() -> strategy);
+
+    // when
+    new PriceTick("ACME", 1).send(pipeline);
+    assertThat(started.await(5, SECONDS)).isTrue();
+    for (int price = 2; price <= 100; price++) {
+      new PriceTick("ACME", price).send(pipeline);
+    }
+    new PriceTick("INITECH", 1).send(pipeline);
+    release.countDown();
+
+    // then
+    await(() -> strategy.pendingKeys() == 0);
+    assertThat(handled).containsExactlyInAnyOrder("ACME 1", "ACME 100", "INITECH 1");
+    assertThat(strategy.conflated()).isEqualTo(98);
+  }
+
+  @Test
+  void conflatesNotificationsWithinWindow() throws InterruptedException {
+    // given
+    release.countDown();
+    ConflatingNoWait strategy =
+        new ConflatingNoWait(executor, Duration.ofMillis(200), it -> ((PriceTick) it).symbol);
+    Pipeline pipeline =
+        new Pipelinr().with(() -> Stream.of(new OnPriceTick())).with(() -> strategy);
+
+    // when
+    for (int price = 1; price <= 10; price++) {
+      new PriceTick("ACME", price).send(pipeline);
+    }
+
+    // then
+    await(() -> strategy.pendingKeys() == 0);
+    assertThat(handled).containsExactly("ACME 10");
+  }
+
+  @Test
+  void doesNotConflateNotificationsWithoutKey() throws InterruptedException {
+    // given
+    release.countDown();
+    ConflatingNoWait strategy = new ConflatingNoWait(executor, it -> null);
+    Pipeline pipeline =
+        new Pipelinr().with(() -> Stream.of(new OnPriceTick())).with(() -> strategy);
+
+    // when
+    for (int price = 1; price <= 10; price++) {
+      new PriceTick("ACME", price).send(pipeline);
+    }
+
+    // then
+    await(() -> handled.size() == 10);
+    assertThat(strategy.conflated()).isZero();
+  }
+
+  @Test
+  void dropsNotificationsRejectedByThreadPool() throws InterruptedException {
+    // given
+    release.countDown();
+    ConflatingNoWait strategy = new ConflatingNoWait(executor, it -> ((PriceTick) it).symbol);
+    Pipeline pipeline =
+        new Pipelinr().with(() -> Stream.of(new OnPriceTick())).with(() -> strategy);
+    executor.shutdown();
+
+    // when
+    assertThrows(RejectedExecutionException.class, () -> new PriceTick("ACME", 1).send(pipeline));
+
+    // then
+    assertThat(strategy.pendingKeys()).isZero();
+    assertThat(handled).isEmpty();
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + SECONDS.toNanos(5);
+    while (!condition.getAsBoolean()) {
+      assertThat(System.nanoTime() - deadline).isNegative();
+      Thread.sleep(1);
+    }
+  }
+
+  static class PriceTick implements Notification {
+
+    private final String symbol;
+    private final int price;
+
+    PriceTick(String symbol, int price) {
+      this.symbol = symbol;
+      this.price = price;
+    }
+  }
+
+  class OnPriceTick implements Notification.Handler<PriceTick> {
+    @Override
+    public void handle(PriceTick notification) {
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      handled.add(notification.symbol + " " + notification.price);
+    }
+  }
+}
@@ -0,0 +1,189 @@
+package an.awesome.pipelinr;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class DeadlineTest {
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(2);
+  private final CountDownLatch release = new CountDownLatch(1);
+  private final List<String> invoked = new CopyOnWriteArrayList<>();
+  private final List<Optional<Deadline>> seen = new ArrayList<>();
+
+  @AfterEach
+  void tearDown() {
+    release.countDown();
+    executor.shutdownNow();
+  }
+
+  @Test
+  void exposesDeadlineToMiddlewaresAndHandlers() {
+    // given
+    Pipeline pipeline = pipeline(new StopOnException());
+    Deadline deadline = Deadline.after(Duration.ofMinutes(1));
+
+    // when
+    String pong = pipeline.send(new Ping(), deadline);
+
+    // then
+    assertThat(pong).isEqualTo("Pong");
+    assertThat(seen).containsExactly(Optional.of(deadline), Optional.of(deadline));
+    assertThat(Deadline.current()).isEmpty();
+  }
+
+  @Test
+  void skipsCommandsWhoseDeadlineHasPassed() {
+    // given
+    Pipeline pipeline = pipeline(new StopOnException());
+
+    // when
+    Throwable e =
+        assertThrows(
+            DeadlineExceededException.class,
+            () -> pipeline.send(new Ping(), Deadline.after(Duration.ZERO)));
+
+    // then
+    assertThat(e).hasMessage("Deadline exceeded");
+    assertThat(seen).isEmpty();
+  }
+
+  @Test
+  void keepsEarlierDeadlineOfNestedSends() {
+    // given
+    Pipeline pipeline = pipeline(new StopOnException());
+    Deadline earlier = Deadline.after(Duration.ofMinutes(1));
+    Deadline later = Deadline.after(Duration.ofMinutes(2));
+
+    // when
+    earlier.attach(() -> pipeline.send(new Ping(), later));
+
+    // then
+    assertThat(seen).containsExactly(Optional.of(earlier), Optional.of(earlier));
+  }
+
+  @Test
+  void propagatesDeadlineToHandlersInOtherThreads() {
+    // given
+    Pipeline pipeline = pipeline(new ParallelWhenAll(executor));
+    Deadline deadline = Deadline.after(Duration.ofMinutes(1));
+
+    // when
+    pipeline.send(new Pinged(), deadline);
+
+    // then
+    assertThat(seen).containsExactly(Optional.of(deadline));
+  }
+
+  @Test
+  void stopsWaitingForHandlersOnceDeadlineHasPassed() {
+    // given
+    Pipeline pipeline = pipeline(new ParallelWhenAll(executor));
+    long start = System.nanoTime();
+
+    // when
+    assertThrows(
+        DeadlineExceededException.class,
+        () -> pipeline.send(new Slow(), Deadline.after(Duration.ofMillis(50))));
+
+    // then
+    assertThat(System.nanoTime() - start).isLessThan(SECONDS.toNanos(5));
+  }
+
+  @Test
+  void skipsNotificationHandlersWhoseDeadlineHasPassed() {
+    // given
+    Pipeline pipeline = pipeline(new ContinueOnException());
+
+    // when
+    AggregateException e =
+        assertThrows(
+            AggregateException.class,
+            () -> pipeline.send(new Expiring(), Deadline.after(Duration.ofMillis(50))));
+
+    // then
+    assertThat(e.exceptions()).hasSize(1).allMatch(it -> it instanceof DeadlineExceededException);
+    assertThat(invoked).containsExactly("OnExpiring");
+  }
+
+  private Pipeline pipeline(NotificationHandlingStrategy strategy) {
+    return new Pipelinr()
+        .with(() -> Stream.of(new Pong()))
+        .with(() -> Stream.of(new OnPinged(), new OnSlow(), new OnExpiring(), new AfterExpiring()))
+        .with(() -> Stream.of(new SeeDeadline()))
+        .with(() -> strategy);
+  }
+
+  static class Ping implements Command<String> {}
+
+  static class Pinged implements Notification {}
+
+  static class Slow implements Notification {}
+
+  static class Expiring implements Notification {}
+
+  class Pong implements Command.Handler<Ping, String> {
+    @Override
+    public String handle(Ping command) {
+      seen.add(Deadline.current());
+      return "Pong";
+    }
+  }
+
+  class SeeDeadline implements Command.Middleware {
+    @Override
+    public <R, C extends Command<R>> R invoke(C command, Next<R> next) {
+      seen.add(Deadline.current());
+      return next.invoke();
+    }
+  }
+
+  class OnPinged implements Notification.Handler<Pinged> {
+    @Override
+    public void handle(Pinged notification) {
+      seen.add(Deadline.current());
+    }
+  }
+
+  class OnSlow implements Notification.Handler<Slow> {
+    @Override
+    public void handle(Slow notification) {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  class OnExpiring implements Notification.Handler<Expiring> {
+    @Override
+    public void handle(Expiring notification) {
+      invoked.add("OnExpiring");
+      try {
+        Thread.sleep(Deadline.current().get().remaining().toMillis() + 10);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  class AfterExpiring implements Notification.Handler<Expiring> {
+    @Override
+    public void handle(Expiring notification) {
+      invoked.add("AfterExpiring");
+    }
+  }
+}
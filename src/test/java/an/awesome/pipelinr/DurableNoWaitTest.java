@@ -0,0 +1,273 @@
+package an.awesome.pipelinr;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import an.awesome.pipelinr.DurableNoWait.Serializer;
+import an.awesome.pipelinr.DurableNoWait.Sync;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DurableNoWaitTest {
+
+  @TempDir Path directory;
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(4);
+  private final List<String> handled = new CopyOnWriteArrayList<>();
+  private volatile boolean failing = true;
+
+  @AfterEach
+  void tearDown() throws InterruptedException {
+    executor.shutdown();
+    executor.awaitTermination(5, SECONDS);
+  }
+
+  @Test
+  void acknowledgesHandledNotifications() throws InterruptedException {
+    // given
+    DurableNoWait strategy = new DurableNoWait(directory, Serializer.javaSerialization(), executor);
+    Pipeline pipeline = pipeline(strategy);
+
+    // when
+    for (int i = 0; i < 100; i++) {
+      new OrderPlaced("Order " + i).send(pipeline);
+    }
+
+    // then
+    await(() -> strategy.pending() == 0);
+    assertThat(handled).hasSize(100).contains("Order 0", "Order 99");
+    assertThat(strategy.failed()).isZero();
+  }
+
+  @Test
+  void replaysUnacknowledgedNotificationsOnRestart() throws InterruptedException {
+    // given
+    DurableNoWait crashed = strategy(Sync.NEVER);
+    Pipeline crashedPipeline = pipeline(crashed);
+    new OrderPlaced("Order 1").send(crashedPipeline);
+    new OrderPlaced("Fail").send(crashedPipeline);
+    new OrderPlaced("Order 2").send(crashedPipeline);
+    await(() -> crashed.failed() == 1 && handled.size() == 2);
+    crashed.close();
+
+    // when
+    DurableNoWait restarted = strategy(Sync.NEVER);
+    long pendingOnRestart = restarted.pending();
+    handled.clear();
+    failing = false;
+    int replayed = restarted.replay(new Pipelinr().with(() -> Stream.of(new OnOrderPlaced())));
+
+    // then
+    assertThat(pendingOnRestart).isEqualTo(1);
+    assertThat(replayed).isEqualTo(1);
+    assertThat(handled).containsExactly("Fail");
+    assertThat(restarted.pending()).isZero();
+    assertThat(strategy(Sync.NEVER).pending()).isZero();
+  }
+
+  @Test
+  void rollsSegmentsAndDeletesAcknowledgedOnes() throws Exception {
+    // given
+    DurableNoWait strategy = strategy(Sync.GROUP);
+    Pipeline pipeline = pipeline(strategy);
+
+    // when
+    for (int i = 0; i < 100; i++) {
+      new OrderPlaced("Order " + i).send(pipeline);
+    }
+
+    // then
+    await(() -> strategy.pending() == 0);
+    assertThat(handled).hasSize(100);
+    assertThat(strategy.segments()).isEqualTo(1);
+    try (Stream<Path> files = Files.list(directory)) {
+      assertThat(files.count()).isEqualTo(1);
+    }
+  }
+
+  @Test
+  void ignoresTornRecords() throws Exception {
+    // given
+    DurableNoWait crashed = strategy(Sync.NEVER);
+    new OrderPlaced("Fail").send(pipeline(crashed));
+    await(() -> crashed.failed() == 1);
+    crashed.close();
+
+    // when
+    Path segment;
+    try (Stream<Path> files = Files.list(directory)) {
+      segment = files.findFirst().get();
+    }
+    corrupt(segment, 20);
+
+    // then
+    assertThat(strategy(Sync.NEVER).pending()).isZero();
+  }
+
+  @Test
+  void acknowledgesNotificationsWhoseDeadlineHasPassed() throws InterruptedException {
+    // given
+    DurableNoWait strategy = strategy(Sync.GROUP);
+
+    // when
+    new OrderPlaced("Expired").send(pipeline(strategy));
+
+    // then
+    await(() -> strategy.expired() == 1);
+    assertThat(strategy.pending()).isZero();
+    assertThat(strategy.failed()).isZero();
+  }
+
+  @Test
+  void waitsForHandlersOnClose() {
+    // given
+    DurableNoWait strategy = strategy(Sync.GROUP);
+    new OrderPlaced("Slow").send(pipeline(strategy));
+
+    // when
+    strategy.close();
+
+    // then
+    assertThat(handled).containsExactly("Slow");
+    assertThat(strategy.pending()).isZero();
+  }
+
+  @Test
+  void rejectsNotificationsOnceClosed() {
+    // given
+    DurableNoWait strategy = strategy(Sync.GROUP);
+    strategy.close();
+
+    // when
+    Throwable e =
+        assertThrows(
+            IllegalStateException.class, () -> new OrderPlaced("Order 1").send(pipeline(strategy)));
+
+    // then
+    assertThat(e).hasMessage("Log is closed");
+    assertThat(handled).isEmpty();
+  }
+
+  @Test
+  void runsAllHandlersEvenIfOneFails() throws InterruptedException {
+    // given
+    DurableNoWait strategy = strategy(Sync.GROUP);
+    Pipeline pipeline =
+        new Pipelinr()
+            .with(() -> Stream.of(new OnOrderPlaced(), new AuditOrderPlaced()))
+            .with(() -> strategy);
+
+    // when
+    new OrderPlaced("Fail").send(pipeline);
+
+    // then
+    await(() -> strategy.failed() == 1);
+    assertThat(handled).containsExactly("Audit Fail");
+    assertThat(strategy.pending()).isEqualTo(1);
+  }
+
+  @Test
+  void skipsFilesThatAreNotSegments() throws Exception {
+    // given
+    Path notes = Files.write(directory.resolve("notes.log"), new byte[] {1, 2, 3});
+
+    // when
+    DurableNoWait strategy = strategy(Sync.GROUP);
+    new OrderPlaced("Order 1").send(pipeline(strategy));
+    strategy.close();
+
+    // then
+    assertThat(handled).containsExactly("Order 1");
+    assertThat(strategy.segments()).isEqualTo(1);
+    assertThat(Files.readAllBytes(notes)).containsExactly(1, 2, 3);
+  }
+
+  @Test
+  void runsHandlersWithoutNotificationInThreadPool() throws Exception {
+    // given
+    DurableNoWait strategy = strategy(Sync.GROUP);
+
+    // when
+    strategy.handle(Collections.singletonList(() -> handled.add(Thread.currentThread().getName())));
+    strategy.close();
+
+    // then
+    assertThat(handled).hasSize(1).doesNotContain(Thread.currentThread().getName());
+    assertThat(strategy.pending()).isZero();
+    assertThat(strategy(Sync.GROUP).pending()).isZero();
+  }
+
+  private DurableNoWait strategy(Sync sync) {
+    return new DurableNoWait(directory, 1024, sync, Serializer.javaSerialization(), executor);
+  }
+
+  private Pipeline pipeline(DurableNoWait strategy) {
+    return new Pipelinr().with(() -> Stream.of(new OnOrderPlaced())).with(() -> strategy);
+  }
+
+  private static void corrupt(Path file, int position) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+      raf.seek(position);
+      int value = raf.read();
+      raf.seek(position);
+      raf.write(value ^ 0xFF);
+    }
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + SECONDS.toNanos(5);
+    while (!condition.getAsBoolean()) {
+      assertThat(System.nanoTime() - deadline).isNegative();
+      Thread.sleep(1);
+    }
+  }
+
+  static class OrderPlaced implements Notification, Serializable {
+    final String order;
+
+    OrderPlaced(String order) {
+      this.order = order;
+    }
+  }
+
+  class AuditOrderPlaced implements Notification.Handler<OrderPlaced> {
+    @Override
+    public void handle(OrderPlaced notification) {
+      handled.add("Audit " + notification.order);
+    }
+  }
+
+  class OnOrderPlaced implements Notification.Handler<OrderPlaced> {
+    @Override
+    public void handle(OrderPlaced notification) {
+      if (failing && notification.order.equals("Fail")) {
+        throw new IllegalStateException("Cannot handle " + notification.order);
+      }
+      if (notification.order.equals("Expired")) {
+        throw new DeadlineExceededException();
+      }
+      if (notification.order.equals("Slow")) {
+        try {
+          Thread.sleep(100);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      handled.add(notification.order);
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package an.awesome.pipelinr;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+class HandlerTypesTest {
+
+  @Test
+  void resolvesCommandTypesOfHandlers() {
+    assertThat(HandlerTypes.commandType(PingHandler.class)).isEqualTo(Ping.class);
+    assertThat(HandlerTypes.commandTypeOf(PingHandler.class)).isEqualTo(Ping.class);
+  }
+
+  @Test
+  void resolvesNotificationTypesOfHandlers() {
+    assertThat(HandlerTypes.notificationType(PingedHandler.class)).isEqualTo(Pinged.class);
+    assertThat(HandlerTypes.notificationTypeOf(PingedHandler.class)).isEqualTo(Pinged.class);
+  }
+
+  @Test
+  void doesNotMatchHandlersWithCustomMatchingByType() {
+    assertThat(HandlerTypes.commandTypeOf(CustomPingHandler.class)).isNull();
+    assertThat(HandlerTypes.notificationTypeOf(CustomPingedHandler.class)).isNull();
+  }
+
+  @Test
+  void doesNotMatchHandlersWithUnresolvableTypesByType() {
+    assertThat(HandlerTypes.commandTypeOf(GenericHandler.class)).isNull();
+    assertThrows(ClassCastException.class, () -> new GenericHandler<Ping>().matches(new Ping()));
+  }
+
+  static class Ping implements Command<Voidy> {}
+
+  static class Pinged implements Notification {}
+
+  static class PingHandler implements Command.Handler<Ping, Voidy> {
+    @Override
+    public Voidy handle(Ping command) {
+      return new Voidy();
+    }
+  }
+
+  static class CustomPingHandler extends PingHandler {
+    @Override
+    public boolean matches(Ping command) {
+      return false;
+    }
+  }
+
+  static class GenericHandler<C extends Command<Voidy>> implements Command.Handler<C, Voidy> {
+    @Override
+    public Voidy handle(C command) {
+      return new Voidy();
+    }
+  }
+
+  static class PingedHandler implements Notification.Handler<Pinged> {
+    @Override
+    public void handle(Pinged notification) {}
+  }
+
+  static class CustomPingedHandler extends PingedHandler {
+    @Override
+    public boolean matches(Pinged notification) {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,276 @@
+package an.awesome.pipelinr;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class HedgingMiddlewareTest {
+
+  private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(4);
+  private final AtomicInteger attempts = new AtomicInteger();
+  private final CountDownLatch interrupted = new CountDownLatch(1);
+
+  @AfterEach
+  void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  void hedgesSlowCommandAndCancelsLoser() throws Exception {
+    // given
+    HedgingMiddleware hedging = new HedgingMiddleware(executor, Duration.ofMillis(20));
+    Pipeline pipeline = pipeline(hedging, attempt -> attempt == 1 ? "slow" : "fast");
+
+    // when
+    String result = new GetQuote().execute(pipeline);
+
+    // then
+    assertThat(result).isEqualTo("fast");
+    assertThat(attempts).hasValue(2);
+    assertThat(hedging.hedgesFired()).isEqualTo(1);
+    assertThat(hedging.hedgesWon()).isEqualTo(1);
+    assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+  }
+
+  @Test
+  void doesNotHedgeFastCommands() {
+    // given
+    HedgingMiddleware hedging = new HedgingMiddleware(executor, Duration.ofSeconds(5));
+    Pipeline pipeline = pipeline(hedging, attempt -> "fast");
+
+    // when
+    String result = new GetQuote().execute(pipeline);
+
+    // then
+    assertThat(result).isEqualTo("fast");
+    assertThat(attempts).hasValue(1);
+    assertThat(hedging.hedgesFired()).isZero();
+    assertThat(hedging.hedgesWon()).isZero();
+  }
+
+  @Test
+  void doesNotHedgeCommandsThatAreNotIdempotent() {
+    // given
+    HedgingMiddleware hedging = new HedgingMiddleware(executor, Duration.ZERO);
+    Thread caller = Thread.currentThread();
+    Pipeline pipeline =
+        pipeline(hedging, attempt -> Thread.currentThread() == caller ? "caller" : "executor");
+
+    // when
+    String result = new PlaceOrder().execute(pipeline);
+
+    // then
+    assertThat(result).isEqualTo("caller");
+    assertThat(attempts).hasValue(1);
+    assertThat(hedging.hedgesFired()).isZero();
+  }
+
+  @Test
+  void returnsWinnerWithoutWaitingForLoserThatIgnoresInterrupts() {
+    // given
+    HedgingMiddleware hedging = new HedgingMiddleware(executor, Duration.ofMillis(20));
+    Pipeline pipeline =
+        pipeline(
+            hedging,
+            attempt -> {
+              if (attempt == 1) {
+                long until = System.nanoTime() + Duration.ofSeconds(2).toNanos();
+                while (System.nanoTime() - until < 0) {
+                  Thread.interrupted();
+                }
+              }
+              return attempt == 1 ? "stubborn" : "fast";
+            });
+    long start = System.nanoTime();
+
+    // when
+    String result = new GetQuote().execute(pipeline);
+
+    // then
+    assertThat(result).isEqualTo("fast");
+    assertThat(System.nanoTime() - start).isLessThan(Duration.ofSeconds(1).toNanos());
+    assertThat(hedging.hedgesWon()).isEqualTo(1);
+  }
+
+  @Test
+  void doesNotLeaveCallerInterrupted() {
+    // given
+    HedgingMiddleware hedging = new HedgingMiddleware(executor, Duration.ofMillis(20));
+    Pipeline pipeline = pipeline(hedging, attempt -> attempt == 1 ? "slow" : "fast");
+
+    // when
+    new GetQuote().execute(pipeline);
+
+    // then
+    assertThat(Thread.currentThread().isInterrupted()).isFalse();
+  }
+
+  @Test
+  void doesNotStartSecondAttemptAfterFirstFails() throws Exception {
+    // given
+    HedgingMiddleware hedging = new HedgingMiddleware(executor, Duration.ofMillis(20));
+    Pipeline pipeline =
+        pipeline(
+            hedging,
+            attempt -> {
+              throw new IllegalStateException("Attempt " + attempt + " failed");
+            });
+
+    // when
+    Throwable e = assertThrows(IllegalStateException.class, () -> new GetQuote().execute(pipeline));
+    Thread.sleep(100);
+
+    // then
+    assertThat(e).hasMessage("Attempt 1 failed");
+    assertThat(attempts).hasValue(1);
+    assertThat(hedging.hedgesFired()).isZero();
+  }
+
+  @Test
+  void waitsForOtherAttemptWhenOneFails() {
+    // given
+    HedgingMiddleware hedging = new HedgingMiddleware(executor, Duration.ofMillis(20));
+    Pipeline pipeline =
+        pipeline(
+            hedging,
+            attempt -> {
+              if (attempt == 1) {
+                sleep(100);
+                throw new IllegalStateException("Primary failed");
+              }
+              sleep(200);
+              return "hedge";
+            });
+
+    // when
+    String result = new GetQuote().execute(pipeline);
+
+    // then
+    assertThat(result).isEqualTo("hedge");
+    assertThat(hedging.hedgesFired()).isEqualTo(1);
+    assertThat(hedging.hedgesWon()).isEqualTo(1);
+  }
+
+  @Test
+  void rethrowsWhenAllAttemptsFail() {
+    // given
+    HedgingMiddleware hedging = new HedgingMiddleware(executor, Duration.ofMillis(20));
+    Pipeline pipeline =
+        pipeline(
+            hedging,
+            attempt -> {
+              sleep(50);
+              throw new IllegalStateException("Attempt " + attempt + " failed");
+            });
+
+    // when
+    Throwable e = assertThrows(IllegalStateException.class, () -> new GetQuote().execute(pipeline));
+
+    // then
+    assertThat(e).hasMessage("Attempt 2 failed");
+    assertThat(hedging.hedgesFired()).isEqualTo(1);
+    assertThat(hedging.hedgesWon()).isZero();
+  }
+
+  @Test
+  void derivesThresholdFromObservedPercentile() {
+    // given
+    HedgingMiddleware hedging = new HedgingMiddleware(executor, 99, Duration.ofHours(1));
+    // whichever attempt comes first is slow, since a tiny threshold lets the hedge come first
+    AtomicBoolean slow = new AtomicBoolean();
+    Pipeline pipeline =
+        pipeline(hedging, attempt -> slow.compareAndSet(true, false) ? "slow" : "fast");
+    for (int i = 0; i < 128; i++) {
+      new GetQuote().execute(pipeline);
+    }
+    assertThat(hedging.hedgesFired()).isZero();
+
+    // when
+    slow.set(true);
+    String result = new GetQuote().execute(pipeline);
+
+    // then
+    assertThat(result).isEqualTo("fast");
+    assertThat(hedging.hedgesFired()).isEqualTo(1);
+  }
+
+  @Test
+  void rejectsInvalidPercentile() {
+    // when
+    Throwable e =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> new HedgingMiddleware(executor, 100, Duration.ofMillis(20)));
+
+    // then
+    assertThat(e).hasMessage("Percentile must be between 0 and 100");
+  }
+
+  /**
+   * Returns a pipeline whose handler answers with {@code quotes}. Attempts answering "slow" block
+   * until they are interrupted.
+   */
+  private Pipeline pipeline(HedgingMiddleware hedging, IntFunction<String> quotes) {
+    return new Pipelinr()
+        .with(() -> Stream.of(new GetQuoteHandler(quotes), new PlaceOrderHandler(quotes)))
+        .with(() -> Stream.of(hedging));
+  }
+
+  private void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+  }
+
+  static class GetQuote implements Command<String>, HedgingMiddleware.Idempotent {}
+
+  static class PlaceOrder implements Command<String> {}
+
+  class GetQuoteHandler implements Command.Handler<GetQuote, String> {
+    private final IntFunction<String> quotes;
+
+    GetQuoteHandler(IntFunction<String> quotes) {
+      this.quotes = quotes;
+    }
+
+    @Override
+    public String handle(GetQuote command) {
+      String quote = quotes.apply(attempts.incrementAndGet());
+      if (quote.equals("slow")) {
+        try {
+          new CountDownLatch(1).await();
+        } catch (InterruptedException e) {
+          interrupted.countDown();
+        }
+      }
+      return quote;
+    }
+  }
+
+  class PlaceOrderHandler implements Command.Handler<PlaceOrder, String> {
+    private final IntFunction<String> quotes;
+
+    PlaceOrderHandler(IntFunction<String> quotes) {
+      this.quotes = quotes;
+    }
+
+    @Override
+    public String handle(PlaceOrder command) {
+      return quotes.apply(attempts.incrementAndGet());
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package an.awesome.pipelinr;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+class IndexedCommandRouterTest {
+
+  @Test
+  void routesCommandsAndTheirSubtypesToMatchingHandlers() {
+    // given
+    CommandHandlers handlers = () -> Stream.of(new PingHandler(), new PongHandler());
+    Pipeline pipeline = new Pipelinr().with(handlers).with(new IndexedCommandRouter(handlers));
+
+    // expect
+    assertThat(pipeline.send(new Ping())).isEqualTo("PingHandler");
+    assertThat(pipeline.send(new PingOnSteroids())).isEqualTo("PingHandler");
+    assertThat(pipeline.send(new Pong())).isEqualTo("PongHandler");
+  }
+
+  @Test
+  void takesHandlersOnlyOnce() {
+    // given
+    AtomicInteger supplies = new AtomicInteger();
+    CommandHandlers handlers =
+        () -> {
+          supplies.incrementAndGet();
+          return Stream.of(new PingHandler());
+        };
+
+    // and
+    Pipeline pipeline = new Pipelinr().with(new IndexedCommandRouter(handlers));
+
+    // when
+    pipeline.send(new Ping());
+    pipeline.send(new Ping());
+
+    // then
+    assertThat(supplies).hasValue(1);
+  }
+
+  @Test
+  void asksHandlersWithCustomMatchingOnEverySend() {
+    // given
+    CommandHandlers handlers = () -> Stream.of(new LoudPingHandler(), new PingHandler());
+    Pipeline pipeline = new Pipelinr().with(new IndexedCommandRouter(handlers));
+
+    // expect
+    assertThat(pipeline.send(new Ping())).isEqualTo("PingHandler");
+    assertThat(pipeline.send(new PingOnSteroids())).isEqualTo("LoudPingHandler");
+  }
+
+  @Test
+  void prefersHandlersInRegistrationOrder() {
+    // given
+    CommandHandlers handlers = () -> Stream.of(new PingHandler(), new LoudPingHandler());
+    Pipeline pipeline = new Pipelinr().with(new IndexedCommandRouter(handlers));
+
+    // expect
+    assertThat(pipeline.send(new PingOnSteroids())).isEqualTo("PingHandler");
+  }
+
+  @Test
+  void throwsIfSentCommandHasNoMatchingHandler() {
+    // given
+    CommandHandlers handlers = () -> Stream.of(new PongHandler());
+    Pipeline pipeline = new Pipelinr().with(new IndexedCommandRouter(handlers));
+
+    // expect
+    for (int i = 0; i < 2; i++) {
+      Throwable e =
+          assertThrows(CommandHandlerNotFoundException.class, () -> pipeline.send(new Ping()));
+      assertThat(e).hasMessage("Cannot find a matching handler for Ping command");
+    }
+  }
+
+  static class Ping implements Command<String> {}
+
+  static class PingOnSteroids extends Ping {}
+
+  static class Pong implements Command<String> {}
+
+  static class PingHandler implements Command.Handler<Ping, String> {
+    @Override
+    public String handle(Ping command) {
+      return "PingHandler";
+    }
+  }
+
+  static class LoudPingHandler implements Command.Handler<Ping, String> {
+    @Override
+    public String handle(Ping command) {
+      return "LoudPingHandler";
+    }
+
+    @Override
+    public boolean matches(Ping command) {
+      return command instanceof PingOnSteroids;
+    }
+  }
+
+  static class PongHandler implements Command.Handler<Pong, String> {
+    @Override
+    public String handle(Pong command) {
+      return "PongHandler";
+    }
+  }
+}
@@ -0,0 +1,114 @@
+package an.awesome.pipelinr;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+class IndexedNotificationRouterTest {
+
+  private final List<String> handled = new ArrayList<>();
+
+  @Test
+  void routesNotificationsToHandlersOfTheirSupertypesAndInterfaces() {
+    // given
+    NotificationHandlers handlers =
+        () -> Stream.of(new OnPriceChanged(), new OnEntityChanged(), new OnAudited(), new OnAny());
+    Pipeline pipeline =
+        new Pipelinr()
+            .with(handlers)
+            .withNotificationRouter(new IndexedNotificationRouter(handlers));
+
+    // when
+    new PriceChanged().send(pipeline);
+
+    // then
+    assertThat(handled).containsExactly("OnPriceChanged", "OnEntityChanged", "OnAudited", "OnAny");
+
+    // when
+    handled.clear();
+    new EntityChanged().send(pipeline);
+
+    // then
+    assertThat(handled).containsExactly("OnEntityChanged", "OnAny");
+  }
+
+  @Test
+  void asksHandlersWithCustomMatchingOnEverySend() {
+    // given
+    NotificationHandlers handlers = () -> Stream.of(new OnLargePriceChange(), new OnPriceChanged());
+    Pipeline pipeline =
+        new Pipelinr().withNotificationRouter(new IndexedNotificationRouter(handlers));
+
+    // when
+    new PriceChanged(10).send(pipeline);
+    new PriceChanged(1000).send(pipeline);
+
+    // then
+    assertThat(handled).containsExactly("OnPriceChanged", "OnLargePriceChange", "OnPriceChanged");
+  }
+
+  @Test
+  void takesHandlersOnlyOnce() {
+    // given
+    AtomicInteger supplies = new AtomicInteger();
+    NotificationHandlers handlers =
+        () -> {
+          supplies.incrementAndGet();
+          return Stream.of(new OnPriceChanged());
+        };
+
+    // and
+    Pipeline pipeline =
+        new Pipelinr().withNotificationRouter(new IndexedNotificationRouter(handlers));
+
+    // when
+    new PriceChanged().send(pipeline);
+    new PriceChanged().send(pipeline);
+
+    // then
+    assertThat(supplies).hasValue(1);
+    assertThat(handled).hasSize(2);
+  }
+
+  interface Audited extends Notification {}
+
+  static class EntityChanged implements Notification {}
+
+  static class PriceChanged extends EntityChanged implements Audited {
+    private final int delta;
+
+    PriceChanged() {
+      this(0);
+    }
+
+    PriceChanged(int delta) {
+      this.delta = delta;
+    }
+  }
+
+  abstract class Recording<N extends Notification> implements Notification.Handler<N> {
+    @Override
+    public void handle(N notification) {
+      handled.add(getClass().getSimpleName());
+    }
+  }
+
+  class OnPriceChanged extends Recording<PriceChanged> {}
+
+  class OnEntityChanged extends Recording<EntityChanged> {}
+
+  class OnAudited extends Recording<Audited> {}
+
+  class OnAny extends Recording<Notification> {}
+
+  class OnLargePriceChange extends Recording<PriceChanged> {
+    @Override
+    public boolean matches(PriceChanged notification) {
+      return notification.delta > 100;
+    }
+  }
+}
@@ -0,0 +1,95 @@
+package an.awesome.pipelinr;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+  @Test
+  void reportsZerosWhenEmpty() {
+    // given
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    // then
+    assertThat(histogram.count()).isZero();
+    assertThat(histogram.max()).isZero();
+    assertThat(histogram.mean()).isZero();
+    assertThat(histogram.valueAtPercentile(99)).isZero();
+  }
+
+  @Test
+  void reportsPercentilesWithinBucketPrecision() {
+    // given
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    // when
+    for (long nanos = 1; nanos <= 1_000_000; nanos++) {
+      histogram.record(nanos);
+    }
+
+    // then
+    assertThat(histogram.count()).isEqualTo(1_000_000);
+    assertThat(histogram.max()).isEqualTo(1_000_000);
+    assertThat(histogram.mean()).isCloseTo(500_000.5, within(0.001));
+    assertThat(histogram.valueAtPercentile(50)).isBetween(500_000L, 562_500L);
+    assertThat(histogram.valueAtPercentile(99)).isBetween(990_000L, 1_000_000L);
+    assertThat(histogram.valueAtPercentile(100)).isEqualTo(1_000_000);
+    assertThat(histogram.valueAtPercentile(0)).isEqualTo(1);
+  }
+
+  @Test
+  void coversTheWholeRangeOfLongs() {
+    // given
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    // when
+    histogram.record(Long.MAX_VALUE);
+    histogram.record(-1);
+
+    // then
+    assertThat(histogram.valueAtPercentile(100)).isEqualTo(Long.MAX_VALUE);
+    assertThat(histogram.valueAtPercentile(50)).isZero();
+  }
+
+  @Test
+  void bucketsAreContiguous() {
+    for (int bucket = 0; bucket < LatencyHistogram.bucketOf(Long.MAX_VALUE); bucket++) {
+      assertThat(LatencyHistogram.bucketOf(LatencyHistogram.lowestValueIn(bucket)))
+          .isEqualTo(bucket);
+      assertThat(LatencyHistogram.bucketOf(LatencyHistogram.highestValueIn(bucket)))
+          .isEqualTo(bucket);
+      assertThat(LatencyHistogram.highestValueIn(bucket) + 1)
+          .isEqualTo(LatencyHistogram.lowestValueIn(bucket + 1));
+    }
+  }
+
+  @Test
+  void recordsConcurrently() {
+    // given
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    // when
+    IntStream.range(0, 100_000).parallel().forEach(histogram::record);
+
+    // then
+    assertThat(histogram.count()).isEqualTo(100_000);
+    assertThat(histogram.max()).isEqualTo(99_999);
+  }
+
+  @Test
+  void rejectsPercentilesOutOfRange() {
+    // given
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    // when
+    Throwable e =
+        assertThrows(IllegalArgumentException.class, () -> histogram.valueAtPercentile(101));
+
+    // then
+    assertThat(e).hasMessage("Percentile must be between 0 and 100");
+  }
+}
@@ -0,0 +1,165 @@
+package an.awesome.pipelinr;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class PartitionedNoWaitTest {
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(4);
+  private final CountDownLatch started = new CountDownLatch(1);
+  private final CountDownLatch release = new CountDownLatch(1);
+  private final Map<String, List<Integer>> handled = new ConcurrentHashMap<>();
+  private final PartitionedNoWait strategy =
+      new PartitionedNoWait(executor, 4, it -> ((OrderEvent) it).orderId);
+  private final Pipeline pipeline =
+      new Pipelinr().with(() -> Stream.of(new OnOrderEvent())).with(() -> strategy);
+
+  @AfterEach
+  void tearDown() throws InterruptedException {
+    release.countDown();
+    executor.shutdown();
+    executor.awaitTermination(5, SECONDS);
+  }
+
+  @Test
+  void handlesNotificationsWithSameKeyInOrder() throws InterruptedException {
+    // given
+    release.countDown();
+
+    // when
+    for (int sequence = 0; sequence < 1000; sequence++) {
+      for (int order = 0; order < 10; order++) {
+        new OrderEvent("Order " + order, sequence).send(pipeline);
+      }
+    }
+
+    // then
+    await(() -> handledCount() == 10_000);
+    List<Integer> sequences = IntStream.range(0, 1000).boxed().collect(Collectors.toList());
+    assertThat(handled).hasSize(10);
+    handled.values().forEach(it -> assertThat(it).isEqualTo(sequences));
+  }
+
+  @Test
+  void handlesOtherLanesWhileLaneIsBusy() throws InterruptedException {
+    // given
+    String blocked = "Order 0";
+    String other = keyInOtherLaneThan(blocked);
+    new OrderEvent(blocked, -1).send(pipeline);
+    assertThat(started.await(5, SECONDS)).isTrue();
+
+    // when
+    new OrderEvent(blocked, 1).send(pipeline);
+    new OrderEvent(other, 1).send(pipeline);
+
+    // then
+    await(() -> handled.containsKey(other));
+    assertThat(handled).doesNotContainKey(blocked);
+    release.countDown();
+    await(() -> handledCount() == 3);
+    assertThat(handled.get(blocked)).containsExactly(-1, 1);
+  }
+
+  @Test
+  void reportsQueueDepthOfEachLane() throws InterruptedException {
+    // given
+    String blocked = "Order 0";
+    new OrderEvent(blocked, -1).send(pipeline);
+    assertThat(started.await(5, SECONDS)).isTrue();
+
+    // when
+    for (int sequence = 1; sequence <= 3; sequence++) {
+      new OrderEvent(blocked, sequence).send(pipeline);
+    }
+
+    // then
+    int lane = strategy.laneOf(blocked);
+    for (int it = 0; it < strategy.lanes(); it++) {
+      assertThat(strategy.queueDepth(it)).isEqualTo(it == lane ? 4 : 0);
+    }
+    release.countDown();
+    await(() -> strategy.queueDepth(lane) == 0);
+  }
+
+  private String keyInOtherLaneThan(String key) {
+    return IntStream.range(1, 100)
+        .mapToObj(it -> "Order " + it)
+        .filter(it -> strategy.laneOf(it) != strategy.laneOf(key))
+        .findFirst()
+        .get();
+  }
+
+  @Test
+  void dropsNotificationsRejectedByThreadPool() {
+    // given
+    ExecutorService shutDown = Executors.newSingleThreadExecutor();
+    shutDown.shutdown();
+    PartitionedNoWait strategy =
+        new PartitionedNoWait(shutDown, 4, it -> ((OrderEvent) it).orderId);
+    Pipeline pipeline =
+        new Pipelinr().with(() -> Stream.of(new OnOrderEvent())).with(() -> strategy);
+
+    // when
+    assertThrows(
+        RejectedExecutionException.class, () -> new OrderEvent("Order 1", 1).send(pipeline));
+
+    // then
+    assertThat(strategy.queueDepth(strategy.laneOf("Order 1"))).isZero();
+    assertThat(handled).isEmpty();
+  }
+
+  private int handledCount() {
+    return handled.values().stream().mapToInt(List::size).sum();
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + SECONDS.toNanos(5);
+    while (!condition.getAsBoolean()) {
+      assertThat(System.nanoTime() - deadline).isNegative();
+      Thread.sleep(1);
+    }
+  }
+
+  static class OrderEvent implements Notification {
+    final String orderId;
+    final int sequence;
+
+    OrderEvent(String orderId, int sequence) {
+      this.orderId = orderId;
+      this.sequence = sequence;
+    }
+  }
+
+  class OnOrderEvent implements Notification.Handler<OrderEvent> {
+    @Override
+    public void handle(OrderEvent event) {
+      if (event.sequence < 0) {
+        started.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      handled
+          .computeIfAbsent(event.orderId, it -> new CopyOnWriteArrayList<>())
+          .add(event.sequence);
+    }
+  }
+}
@@ -0,0 +1,143 @@
+package an.awesome.pipelinr;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import an.awesome.pipelinr.PipelineMetrics.Kind;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+class PipelineMetricsTest {
+
+  private final PipelineMetrics metrics = new PipelineMetrics();
+
+  @Test
+  void recordsCommandsAndTheirHandlers() {
+    // given
+    Pipeline pipeline = new Pipelinr().with(() -> Stream.of(new Pong(), new Fail())).with(metrics);
+
+    // when
+    new Ping().execute(pipeline);
+    new Ping().execute(pipeline);
+    assertThrows(IllegalStateException.class, () -> new Boom().execute(pipeline));
+
+    // then
+    assertThat(metrics.timer(Kind.COMMAND, Ping.class).count()).isEqualTo(2);
+    assertThat(metrics.timer(Kind.COMMAND, Ping.class).errors()).isZero();
+    assertThat(metrics.timer(Kind.COMMAND_HANDLER, Pong.class).count()).isEqualTo(2);
+    assertThat(metrics.timer(Kind.COMMAND, Boom.class).errors()).isEqualTo(1);
+    assertThat(metrics.timer(Kind.COMMAND_HANDLER, Fail.class).errors()).isEqualTo(1);
+  }
+
+  @Test
+  void countsUnroutedCommandsAsCommandErrors() {
+    // given
+    Pipeline pipeline = new Pipelinr().with(metrics);
+
+    // when
+    assertThrows(CommandHandlerNotFoundException.class, () -> new Ping().execute(pipeline));
+
+    // then
+    assertThat(metrics.timer(Kind.COMMAND, Ping.class).errors()).isEqualTo(1);
+  }
+
+  @Test
+  void recordsCommandsSentAsynchronouslyAndInBatches() {
+    // given
+    Pipeline pipeline = new Pipelinr().with(() -> Stream.of(new Pong())).with(metrics).build();
+
+    // when
+    pipeline.sendAsync(new Ping()).toCompletableFuture().join();
+    pipeline.sendAll(asList(new Ping(), new Ping()));
+
+    // then
+    assertThat(metrics.timer(Kind.COMMAND, Ping.class).count()).isEqualTo(3);
+    assertThat(metrics.timer(Kind.COMMAND_HANDLER, Pong.class).count()).isEqualTo(3);
+  }
+
+  @Test
+  void recordsNotificationsAndTheirHandlers() {
+    // given
+    Pipeline pipeline =
+        new Pipelinr()
+            .with(() -> Stream.of(new OnPinged(), new OnPingedFail()))
+            .with(ContinueOnException::new)
+            .with(metrics);
+
+    // when
+    assertThrows(AggregateException.class, () -> new Pinged().send(pipeline));
+
+    // then
+    assertThat(metrics.timer(Kind.NOTIFICATION, Pinged.class).errors()).isEqualTo(1);
+    assertThat(metrics.timer(Kind.NOTIFICATION_HANDLER, OnPinged.class).count()).isEqualTo(1);
+    assertThat(metrics.timer(Kind.NOTIFICATION_HANDLER, OnPinged.class).errors()).isZero();
+    assertThat(metrics.timer(Kind.NOTIFICATION_HANDLER, OnPingedFail.class).errors()).isEqualTo(1);
+  }
+
+  @Test
+  void exportsRecordedTimers() {
+    // given
+    Pipeline pipeline = new Pipelinr().with(() -> Stream.of(new Pong())).with(metrics);
+    new Ping().execute(pipeline);
+
+    // when
+    Map<String, Long> exported = new HashMap<>();
+    metrics.exportTo(
+        (kind, type, timer) -> exported.put(kind + " " + type.getSimpleName(), timer.count()));
+
+    // then
+    assertThat(exported)
+        .containsEntry("COMMAND Ping", 1L)
+        .containsEntry("COMMAND_HANDLER Pong", 1L);
+  }
+
+  @Test
+  void recordsNothingWhenDisabled() {
+    // given
+    Pipeline pipeline = new Pipelinr().with(() -> Stream.of(new Pong()));
+
+    // when
+    new Ping().execute(pipeline);
+
+    // then
+    metrics.exportTo(
+        (kind, type, timer) -> {
+          throw new AssertionError("Nothing must be exported");
+        });
+  }
+
+  static class Ping implements Command<String> {}
+
+  static class Boom implements Command<String> {}
+
+  static class Pong implements Command.Handler<Ping, String> {
+    @Override
+    public String handle(Ping command) {
+      return "Pong";
+    }
+  }
+
+  static class Fail implements Command.Handler<Boom, String> {
+    @Override
+    public String handle(Boom command) {
+      throw new IllegalStateException("Boom");
+    }
+  }
+
+  static class Pinged implements Notification {}
+
+  static class OnPinged implements Notification.Handler<Pinged> {
+    @Override
+    public void handle(Pinged notification) {}
+  }
+
+  static class OnPingedFail implements Notification.Handler<Pinged> {
+    @Override
+    public void handle(Pinged notification) {
+      throw new IllegalStateException("Boom");
+    }
+  }
+}
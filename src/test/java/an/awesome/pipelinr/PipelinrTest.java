@@ -112,6 +112,76 @@ class PipelinrTest {
     assertThat(invokedMiddlewareIds).containsExactly("foo", "bar", "baz");
   }
 
+  @Test
+  void obtainsMiddlewaresOnFirstSendAfterTheyAreSet() {
+    // given
+    List<String> supplied = new ArrayList<>();
+    Command.Middleware passThrough =
+        new Command.Middleware() {
+          @Override
+          public <R, C extends Command<R>> R invoke(C command, Next<R> next) {
+            return next.invoke();
+          }
+        };
+    Pipelinr pipelinr =
+        new Pipelinr()
+            .with(() -> Stream.of(new Pong1()))
+            .with(
+                () -> {
+                  supplied.add("first");
+                  return Stream.of(passThrough);
+                });
+
+    // when
+    new Ping("hi").execute(pipelinr);
+    new Ping("hi").execute(pipelinr);
+    pipelinr.with(
+        () -> {
+          supplied.add("second");
+          return Stream.of(passThrough);
+        });
+    new Ping("hi").execute(pipelinr);
+    new Ping("hi").execute(pipelinr);
+
+    // then
+    assertThat(supplied).containsExactly("first", "second");
+  }
+
+  @Test
+  void supportsMiddlewaresThatInvokeNextMoreThanOnce() {
+    // given
+    Collection<Ping> pings = new ArrayList<>();
+    Command.Handler<Ping, Voidy> handler =
+        new Pong1() {
+          @Override
+          public Voidy handle(Ping command) {
+            pings.add(command);
+            return new Voidy();
+          }
+        };
+
+    // and
+    class Twice implements Command.Middleware {
+      @Override
+      public <R, C extends Command<R>> R invoke(C command, Next<R> next) {
+        next.invoke();
+        return next.invoke();
+      }
+    }
+
+    // and
+    Pipelinr pipelinr =
+        new Pipelinr()
+            .with(() -> Stream.of(handler))
+            .with(() -> Stream.of(new Twice(), new Twice()));
+
+    // when
+    new Ping("hi").execute(pipelinr);
+
+    // then
+    assertThat(pings).hasSize(4);
+  }
+
   @Test
   void supportsCustomHandlerMatching() {
     // given
@@ -0,0 +1,191 @@
+package an.awesome.pipelinr;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+class RateLimitMiddlewareTest {
+
+  private final AtomicLong now = new AtomicLong();
+
+  @Test
+  void rejectsCommandsOverTheLimit() {
+    // given
+    RateLimitMiddleware limiter = new RateLimitMiddleware(2, Duration.ofSeconds(1));
+    Pipeline pipeline = pipeline(limiter);
+
+    // when
+    new Report("acme").execute(pipeline);
+    new Report("acme").execute(pipeline);
+    Throwable e =
+        assertThrows(RateLimitExceededException.class, () -> new Report("acme").execute(pipeline));
+
+    // then
+    assertThat(e).hasMessage("Cannot send Report command, rate limit exceeded");
+    assertThat(limiter.rejected()).isEqualTo(1);
+  }
+
+  @Test
+  void refillsTokensOverTime() {
+    // given
+    RateLimitMiddleware limiter =
+        new RateLimitMiddleware(
+            10, Duration.ofSeconds(1), 10, Duration.ZERO, Command::getClass, now::get);
+
+    // when
+    long granted = IntStream.range(0, 20).filter(i -> limiter.acquire("key") == 0).count();
+    now.addAndGet(Duration.ofMillis(500).toNanos());
+    long grantedLater = IntStream.range(0, 20).filter(i -> limiter.acquire("key") == 0).count();
+
+    // then
+    assertThat(granted).isEqualTo(10);
+    assertThat(grantedLater).isEqualTo(5);
+  }
+
+  @Test
+  void limitsBurst() {
+    // given
+    RateLimitMiddleware limiter =
+        new RateLimitMiddleware(
+            10, Duration.ofSeconds(1), 1, Duration.ZERO, Command::getClass, now::get);
+
+    // when
+    long granted = IntStream.range(0, 20).filter(i -> limiter.acquire("key") == 0).count();
+
+    // then
+    assertThat(granted).isEqualTo(1);
+  }
+
+  @Test
+  void limitsEachKeySeparately() {
+    // given
+    RateLimitMiddleware limiter =
+        new RateLimitMiddleware(
+            1, Duration.ofMinutes(1), it -> it instanceof Report ? ((Report) it).tenant : null);
+    Pipeline pipeline = pipeline(limiter);
+
+    // when
+    new Report("acme").execute(pipeline);
+    new Report("initech").execute(pipeline);
+    new Ping().execute(pipeline);
+    new Ping().execute(pipeline);
+
+    // then
+    assertThrows(RateLimitExceededException.class, () -> new Report("acme").execute(pipeline));
+  }
+
+  @Test
+  void makesCommandsWaitForTheirTurn() {
+    // given
+    RateLimitMiddleware limiter =
+        new RateLimitMiddleware(
+            1, Duration.ofMillis(100), 1, Duration.ofMillis(250), Command::getClass, now::get);
+
+    // when
+    long first = limiter.acquire("key");
+    long second = limiter.acquire("key");
+    long third = limiter.acquire("key");
+    long fourth = limiter.acquire("key");
+
+    // then
+    assertThat(first).isZero();
+    assertThat(second).isEqualTo(Duration.ofMillis(100).toNanos());
+    assertThat(third).isEqualTo(Duration.ofMillis(200).toNanos());
+    assertThat(fourth).isEqualTo(-1);
+  }
+
+  @Test
+  void blocksUntilTurn() {
+    // given
+    RateLimitMiddleware limiter =
+        new RateLimitMiddleware(
+            1, Duration.ofMillis(50), 1, RateLimitMiddleware.FOREVER, Command::getClass);
+    Pipeline pipeline = pipeline(limiter);
+    long start = System.nanoTime();
+
+    // when
+    for (int i = 0; i < 3; i++) {
+      new Report("acme").execute(pipeline);
+    }
+
+    // then
+    assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(Duration.ofMillis(100).toNanos());
+  }
+
+  @Test
+  void doesNotWaitPastDeadline() {
+    // given
+    RateLimitMiddleware limiter =
+        new RateLimitMiddleware(
+            1, Duration.ofMinutes(1), 1, RateLimitMiddleware.FOREVER, Command::getClass);
+    Pipeline pipeline = pipeline(limiter);
+    new Report("acme").execute(pipeline);
+    long start = System.nanoTime();
+
+    // when
+    assertThrows(
+        DeadlineExceededException.class,
+        () -> pipeline.send(new Report("acme"), Deadline.after(Duration.ofMillis(50))));
+
+    // then
+    assertThat(System.nanoTime() - start).isLessThan(Duration.ofSeconds(1).toNanos());
+    assertThat(limiter.rejected()).isZero();
+  }
+
+  @Test
+  void removesKeysWhoseBucketIsFull() {
+    // given
+    RateLimitMiddleware limiter =
+        new RateLimitMiddleware(1, Duration.ofSeconds(1), 1, Duration.ZERO, it -> it, now::get);
+    for (int i = 0; i < 1000; i++) {
+      limiter.acquire(i);
+    }
+    now.addAndGet(Duration.ofSeconds(2).toNanos());
+
+    // when
+    for (int i = 1000; i < 1100; i++) {
+      limiter.acquire(i);
+    }
+
+    // then
+    assertThat(limiter.keys()).isLessThan(1000);
+    assertThat(limiter.acquire(1099)).isEqualTo(-1);
+    assertThat(limiter.acquire(0)).isZero();
+  }
+
+  private Pipeline pipeline(RateLimitMiddleware limiter) {
+    return new Pipelinr()
+        .with(() -> Stream.of(new ReportHandler(), new Pong()))
+        .with(() -> Stream.of(limiter));
+  }
+
+  static class Report implements Command<String> {
+
+    private final String tenant;
+
+    Report(String tenant) {
+      this.tenant = tenant;
+    }
+  }
+
+  static class Ping implements Command<String> {}
+
+  static class ReportHandler implements Command.Handler<Report, String> {
+    @Override
+    public String handle(Report command) {
+      return "Report of " + command.tenant;
+    }
+  }
+
+  static class Pong implements Command.Handler<Ping, String> {
+    @Override
+    public String handle(Ping command) {
+      return "Pong";
+    }
+  }
+}
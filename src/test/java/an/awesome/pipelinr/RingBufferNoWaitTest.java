@@ -0,0 +1,229 @@
+package an.awesome.pipelinr;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import an.awesome.pipelinr.RingBufferNoWait.WaitStrategy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class RingBufferNoWaitTest {
+
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  private final List<Integer> first = new CopyOnWriteArrayList<>();
+  private final List<Integer> second = new CopyOnWriteArrayList<>();
+  private final List<Integer> third = new CopyOnWriteArrayList<>();
+
+  @AfterEach
+  void tearDown() throws InterruptedException {
+    executor.shutdownNow();
+    executor.awaitTermination(5, SECONDS);
+  }
+
+  @Test
+  void runsEveryHandlerInOrderOfNotifications() throws InterruptedException {
+    for (WaitStrategy waitStrategy : WaitStrategy.values()) {
+      // given
+      first.clear();
+      second.clear();
+      third.clear();
+      RingBufferNoWait strategy = new RingBufferNoWait(executor, 16, 2, waitStrategy);
+      Pipeline pipeline = pipeline(strategy);
+
+      // when
+      for (int i = 0; i < 1000; i++) {
+        new Tick(i).send(pipeline);
+      }
+
+      // then
+      await(() -> strategy.backlog() == 0 && third.size() == 1000);
+      List<Integer> ticks = IntStream.range(0, 1000).boxed().collect(Collectors.toList());
+      assertThat(first).isEqualTo(ticks);
+      assertThat(second).isEqualTo(ticks);
+      assertThat(third).isEqualTo(ticks);
+      strategy.close();
+    }
+  }
+
+  @Test
+  void acceptsNotificationsFromConcurrentSenders() throws InterruptedException {
+    // given
+    RingBufferNoWait strategy = new RingBufferNoWait(executor, 64, 3, WaitStrategy.BLOCKING);
+    Pipeline pipeline = pipeline(strategy);
+    CountDownLatch sent = new CountDownLatch(4);
+
+    // when
+    for (int sender = 0; sender < 4; sender++) {
+      int offset = sender * 10_000;
+      executor.execute(
+          () -> {
+            for (int i = 0; i < 10_000; i++) {
+              new Tick(offset + i).send(pipeline);
+            }
+            sent.countDown();
+          });
+    }
+
+    // then
+    assertThat(sent.await(5, SECONDS)).isTrue();
+    await(() -> strategy.backlog() == 0 && third.size() == 40_000);
+    assertThat(first).doesNotHaveDuplicates().hasSize(40_000);
+    assertThat(second).doesNotHaveDuplicates().hasSize(40_000);
+    strategy.close();
+  }
+
+  @Test
+  void keepsConsumingWhenHandlerThrows() throws InterruptedException {
+    // given
+    RingBufferNoWait strategy = new RingBufferNoWait(executor, 8, 1, WaitStrategy.YIELDING);
+    Pipeline pipeline = pipeline(strategy);
+
+    // when
+    new Tick(-1).send(pipeline);
+    new Tick(1).send(pipeline);
+
+    // then
+    await(() -> third.size() == 2);
+    assertThat(first).containsExactly(1);
+    assertThat(third).containsExactly(-1, 1);
+    strategy.close();
+  }
+
+  @Test
+  void keepsConsumingWhenHandlerThrowsErrorOrInterrupts() throws InterruptedException {
+    // given
+    RingBufferNoWait strategy = new RingBufferNoWait(executor, 8, 1, WaitStrategy.BLOCKING);
+    Pipeline pipeline = pipeline(strategy);
+
+    // when
+    new Tick(-2).send(pipeline);
+    new Tick(-3).send(pipeline);
+    new Tick(1).send(pipeline);
+
+    // then
+    await(() -> third.size() == 3);
+    assertThat(first).containsExactly(1);
+    assertThat(third).containsExactly(-2, -3, 1);
+    strategy.close();
+  }
+
+  @Test
+  void consumesNotificationsSentConcurrentlyWithClose() throws InterruptedException {
+    // given
+    RingBufferNoWait strategy = new RingBufferNoWait(executor, 8, 2, WaitStrategy.YIELDING);
+    Pipeline pipeline = pipeline(strategy);
+    AtomicInteger sent = new AtomicInteger();
+    CountDownLatch done = new CountDownLatch(1);
+    executor.execute(
+        () -> {
+          try {
+            while (true) {
+              new Tick(sent.get()).send(pipeline);
+              sent.incrementAndGet();
+            }
+          } catch (IllegalStateException e) {
+            done.countDown();
+          }
+        });
+    await(() -> sent.get() > 1000);
+
+    // when
+    strategy.close();
+
+    // then
+    assertThat(done.await(5, SECONDS)).isTrue();
+    await(() -> third.size() == sent.get());
+    // consumers advance their sequence after running handlers
+    await(() -> strategy.backlog() == 0);
+  }
+
+  @Test
+  void rejectsNotificationsOnceClosed() {
+    // given
+    RingBufferNoWait strategy = new RingBufferNoWait(executor, 8, 1, WaitStrategy.BUSY_SPIN);
+    strategy.close();
+
+    // when
+    Throwable e =
+        assertThrows(IllegalStateException.class, () -> new Tick(1).send(pipeline(strategy)));
+
+    // then
+    assertThat(e).hasMessage("Ring buffer is closed");
+  }
+
+  @Test
+  void rejectsSizeThatIsNotPowerOfTwo() {
+    // when
+    Throwable e =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> new RingBufferNoWait(executor, 1000, 1, WaitStrategy.BLOCKING));
+
+    // then
+    assertThat(e).hasMessage("Size must be a power of two");
+  }
+
+  private Pipeline pipeline(RingBufferNoWait strategy) {
+    return new Pipelinr()
+        .with(() -> Stream.of(new First(), new Second(), new Third()))
+        .with(() -> strategy);
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + SECONDS.toNanos(5);
+    while (!condition.getAsBoolean()) {
+      assertThat(System.nanoTime() - deadline).isNegative();
+      Thread.sleep(1);
+    }
+  }
+
+  static class Tick implements Notification {
+    final int value;
+
+    Tick(int value) {
+      this.value = value;
+    }
+  }
+
+  class First implements Notification.Handler<Tick> {
+    @Override
+    public void handle(Tick tick) {
+      if (tick.value == -2) {
+        throw new AssertionError("Negative tick");
+      }
+      if (tick.value == -3) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+      if (tick.value < 0) {
+        throw new IllegalStateException("Negative tick");
+      }
+      first.add(tick.value);
+    }
+  }
+
+  class Second implements Notification.Handler<Tick> {
+    @Override
+    public void handle(Tick tick) {
+      second.add(tick.value);
+    }
+  }
+
+  class Third implements Notification.Handler<Tick> {
+    @Override
+    public void handle(Tick tick) {
+      third.add(tick.value);
+    }
+  }
+}
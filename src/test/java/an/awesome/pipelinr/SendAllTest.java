@@ -0,0 +1,199 @@
+package an.awesome.pipelinr;
+
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+class SendAllTest {
+
+  @Test
+  void sendsBatchesToBatchHandlersAndReturnsResultsInOrder() {
+    // given
+    RowImporter importer = new RowImporter();
+    Pipeline pipeline = new Pipelinr().with(() -> Stream.of(importer, new Pong()));
+
+    // when
+    List<String> results =
+        pipeline.sendAll(asList(new ImportRow("a"), new Ping(), new ImportRow("b")));
+
+    // then
+    assertThat(results).containsExactly("imported a", "Pong", "imported b");
+    assertThat(importer.batches).containsExactly(asList("a", "b"));
+  }
+
+  @Test
+  void runsMiddlewaresOncePerBatchAndOncePerCommandOfOtherHandlers() {
+    // given
+    List<Command<?>> commands = new ArrayList<>();
+
+    // and
+    class Recording implements Command.Middleware {
+      @Override
+      public <R, C extends Command<R>> R invoke(C command, Next<R> next) {
+        commands.add(command);
+        return next.invoke();
+      }
+    }
+
+    // and
+    Pipeline pipeline =
+        new Pipelinr()
+            .with(() -> Stream.of(new RowImporter(), new Pong()))
+            .with(() -> Stream.of(new Recording()));
+
+    // when
+    pipeline.sendAll(asList(new ImportRow("a"), new ImportRow("b"), new Ping(), new Ping()));
+
+    // then
+    assertThat(commands).hasSize(3);
+    assertThat(commands.get(0)).isInstanceOf(Batch.class);
+    assertThat(((Batch<?, ?>) commands.get(0)).commands()).hasSize(2);
+    assertThat(commands.subList(1, 3)).allMatch(it -> it instanceof Ping);
+  }
+
+  @Test
+  void routesEveryCommandClassOnce() {
+    // given
+    AtomicInteger supplies = new AtomicInteger();
+    Pipeline pipeline =
+        new Pipelinr()
+            .with(
+                () -> {
+                  supplies.incrementAndGet();
+                  return Stream.of(new Pong(), new RowImporter());
+                });
+
+    // when
+    pipeline.sendAll(asList(new Ping(), new Ping(), new ImportRow("a"), new ImportRow("b")));
+
+    // then
+    assertThat(supplies).hasValue(1);
+  }
+
+  @Test
+  void asksHandlersThatOverrideMatchesForEveryCommand() {
+    // given
+    class EveryOtherPong implements Command.Handler<Ping, String> {
+      private int asked;
+
+      @Override
+      public boolean matches(Ping command) {
+        return asked++ % 2 == 0;
+      }
+
+      @Override
+      public String handle(Ping command) {
+        return "Every other Pong";
+      }
+    }
+
+    // and
+    Pipeline pipeline = new Pipelinr().with(() -> Stream.of(new EveryOtherPong(), new Pong()));
+
+    // when
+    List<String> results = pipeline.sendAll(asList(new Ping(), new Ping()));
+
+    // then
+    assertThat(results).containsExactly("Every other Pong", "Pong");
+  }
+
+  @Test
+  void handlesCommandsWithBatchHandlersOnTheirOwn() {
+    // given
+    Pipeline pipeline = new Pipelinr().with(() -> Stream.of(new RowImporter()));
+
+    // expect
+    assertThat(new ImportRow("a").execute(pipeline)).isEqualTo("imported a");
+  }
+
+  @Test
+  void throwsIfBatchHandlerDoesNotReturnAResultForEveryCommand() {
+    // given
+    class Forgetful implements Command.BatchHandler<ImportRow, String> {
+      @Override
+      public List<String> handleAll(List<ImportRow> commands) {
+        return new ArrayList<>();
+      }
+    }
+
+    // and
+    Pipeline pipeline = new Pipelinr().with(() -> Stream.of(new Forgetful()));
+
+    // when
+    Throwable e =
+        assertThrows(
+            IllegalStateException.class, () -> pipeline.sendAll(asList(new ImportRow("a"))));
+
+    // then
+    assertThat(e)
+        .hasMessage(
+            "Forgetful must return a result for every command, but returned 0 result(s) for 1"
+                + " command(s)");
+  }
+
+  @Test
+  void stopsOnceDeadlinePasses() {
+    // given
+    class SlowPong implements Command.Handler<Ping, String> {
+      @Override
+      public String handle(Ping command) {
+        try {
+          Thread.sleep(20);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return "Pong";
+      }
+    }
+
+    // and
+    RowImporter importer = new RowImporter();
+    Pipeline pipeline = new Pipelinr().with(() -> Stream.of(new SlowPong(), importer));
+    Deadline deadline = Deadline.after(Duration.ofMillis(10));
+
+    // when
+    assertThrows(
+        DeadlineExceededException.class,
+        () -> deadline.attach(() -> pipeline.sendAll(asList(new Ping(), new ImportRow("a")))));
+
+    // then
+    assertThat(importer.batches).isEmpty();
+  }
+
+  static class Ping implements Command<String> {}
+
+  static class ImportRow implements Command<String> {
+    private final String row;
+
+    ImportRow(String row) {
+      this.row = row;
+    }
+  }
+
+  static class Pong implements Command.Handler<Ping, String> {
+    @Override
+    public String handle(Ping command) {
+      return "Pong";
+    }
+  }
+
+  static class RowImporter implements Command.BatchHandler<ImportRow, String> {
+
+    private final List<List<String>> batches = new ArrayList<>();
+
+    @Override
+    public List<String> handleAll(List<ImportRow> commands) {
+      List<String> rows = commands.stream().map(it -> it.row).collect(toList());
+      batches.add(rows);
+      return rows.stream().map(it -> "imported " + it).collect(toList());
+    }
+  }
+}
@@ -0,0 +1,297 @@
+package an.awesome.pipelinr;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+class SendAsyncTest {
+
+  @Test
+  void completesCommandsWithAsyncHandlers() {
+    // given
+    CompletableFuture<String> pong = new CompletableFuture<>();
+    Pipeline pipeline = new Pipelinr().with(() -> Stream.of(new AsyncPong(pong)));
+
+    // when
+    CompletableFuture<String> result = pipeline.sendAsync(new Ping()).toCompletableFuture();
+
+    // then
+    assertThat(result).isNotDone();
+
+    // when
+    pong.complete("Pong");
+
+    // then
+    assertThat(result).isCompletedWithValue("Pong");
+  }
+
+  @Test
+  void adaptsSyncHandlers() {
+    // given
+    Pipeline pipeline = new Pipelinr().with(() -> Stream.of(new Pong()));
+
+    // expect
+    assertThat(pipeline.sendAsync(new Ping()).toCompletableFuture()).isCompletedWithValue("Pong");
+  }
+
+  @Test
+  void sendsCommandsToAsyncHandlersSynchronously() {
+    // given
+    Pipeline pipeline =
+        new Pipelinr()
+            .with(() -> Stream.of(new AsyncPong(CompletableFuture.completedFuture("Pong"))));
+
+    // expect
+    assertThat(new Ping().execute(pipeline)).isEqualTo("Pong");
+  }
+
+  @Test
+  void runsSyncMiddlewaresOnceAsyncMiddlewaresComplete() {
+    // given
+    List<String> invokedMiddlewareIds = new ArrayList<>();
+
+    // and
+    class SyncMiddleware implements Command.Middleware {
+      @Override
+      public <R, C extends Command<R>> R invoke(C command, Next<R> next) {
+        invokedMiddlewareIds.add("sync");
+        return next.invoke();
+      }
+    }
+
+    // and
+    class AsyncMiddleware implements Command.AsyncMiddleware {
+      @Override
+      @SuppressWarnings("unchecked")
+      public <R, C extends Command<R>> CompletionStage<R> invoke(C command, Next<R> next) {
+        invokedMiddlewareIds.add("async");
+        return next.invoke().thenApply(it -> (R) (it + "!"));
+      }
+    }
+
+    // and
+    Pipeline pipeline =
+        new Pipelinr()
+            .with(() -> Stream.of(new Pong()))
+            .with(() -> Stream.of(new SyncMiddleware()))
+            .with(() -> Stream.of(new AsyncMiddleware()));
+
+    // when
+    CompletableFuture<String> result = pipeline.sendAsync(new Ping()).toCompletableFuture();
+
+    // then
+    assertThat(result).isCompletedWithValue("Pong!");
+    assertThat(invokedMiddlewareIds).containsExactly("async", "sync");
+  }
+
+  @Test
+  void doesNotBlockOnSyncMiddlewares() {
+    // given
+    List<Object> seen = new ArrayList<>();
+
+    // and
+    class SyncMiddleware implements Command.Middleware {
+      @Override
+      public <R, C extends Command<R>> R invoke(C command, Next<R> next) {
+        R result = next.invoke();
+        seen.add(result);
+        return result;
+      }
+    }
+
+    // and
+    CompletableFuture<String> pong = new CompletableFuture<>();
+    Pipeline pipeline =
+        new Pipelinr()
+            .with(() -> Stream.of(new AsyncPong(pong)))
+            .with(() -> Stream.of(new SyncMiddleware()));
+
+    // when
+    CompletableFuture<String> result = pipeline.sendAsync(new Ping()).toCompletableFuture();
+
+    // then
+    assertThat(result).isNotDone();
+    assertThat(seen).isEmpty();
+
+    // when
+    pong.complete("Pong");
+
+    // then
+    assertThat(result).isCompletedWithValue("Pong");
+    assertThat(seen).containsExactly("Pong");
+  }
+
+  @Test
+  void skipsHandlerCalledAfterDeadlineByAsyncMiddleware() throws Exception {
+    // given
+    CompletableFuture<Void> later = new CompletableFuture<>();
+    List<String> handled = new ArrayList<>();
+
+    // and
+    class LaterMiddleware implements Command.AsyncMiddleware {
+      @Override
+      public <R, C extends Command<R>> CompletionStage<R> invoke(C command, Next<R> next) {
+        return later.thenCompose(it -> next.invoke());
+      }
+    }
+
+    // and
+    class RecordingPong implements Command.Handler<Ping, String> {
+      @Override
+      public String handle(Ping command) {
+        handled.add("Pong");
+        return "Pong";
+      }
+    }
+
+    // and
+    Pipeline pipeline =
+        new Pipelinr()
+            .with(() -> Stream.of(new RecordingPong()))
+            .with(() -> Stream.of(new LaterMiddleware()));
+    CompletionStage<String> result =
+        Deadline.after(Duration.ofMillis(10)).attach(() -> pipeline.sendAsync(new Ping()));
+
+    // when
+    Thread.sleep(20);
+    later.complete(null);
+
+    // then
+    Throwable e = assertThrows(ExecutionException.class, result.toCompletableFuture()::get);
+    assertThat(e).hasCauseExactlyInstanceOf(DeadlineExceededException.class);
+    assertThat(handled).isEmpty();
+  }
+
+  @Test
+  void syncMiddlewaresSeeResultsOfAsyncHandlers() {
+    // given
+    List<Object> seen = new ArrayList<>();
+
+    // and
+    class SyncMiddleware implements Command.Middleware {
+      @Override
+      public <R, C extends Command<R>> R invoke(C command, Next<R> next) {
+        try {
+          R result = next.invoke();
+          seen.add(result);
+          return result;
+        } catch (RuntimeException e) {
+          seen.add(e);
+          throw e;
+        }
+      }
+    }
+
+    // and
+    IllegalStateException failure = new IllegalStateException("No pong");
+    CompletableFuture<String> pong = new CompletableFuture<>();
+    pong.completeExceptionally(failure);
+    Pipeline pipeline =
+        new Pipelinr()
+            .with(() -> Stream.of(new AsyncPong(pong)))
+            .with(() -> Stream.of(new SyncMiddleware()));
+
+    // when
+    CompletableFuture<String> result = pipeline.sendAsync(new Ping()).toCompletableFuture();
+
+    // then
+    Throwable e = assertThrows(ExecutionException.class, result::get);
+    assertThat(e).hasCause(failure);
+    assertThat(seen).containsExactly(failure);
+  }
+
+  @Test
+  void runsAsyncFormOfMiddlewaresThatHaveOne() {
+    // given
+    List<String> invokedMiddlewareIds = new ArrayList<>();
+
+    // and
+    class BothMiddleware implements Command.Middleware, Command.AsyncMiddleware {
+      @Override
+      public <R, C extends Command<R>> R invoke(C command, Command.Middleware.Next<R> next) {
+        invokedMiddlewareIds.add("sync");
+        return next.invoke();
+      }
+
+      @Override
+      public <R, C extends Command<R>> CompletionStage<R> invoke(
+          C command, Command.AsyncMiddleware.Next<R> next) {
+        invokedMiddlewareIds.add("async");
+        return next.invoke();
+      }
+    }
+
+    // and
+    CompletableFuture<String> pong = new CompletableFuture<>();
+    Pipeline pipeline =
+        new Pipelinr()
+            .with(() -> Stream.of(new AsyncPong(pong)))
+            .with((Command.Middlewares) () -> Stream.of(new BothMiddleware()));
+
+    // when
+    CompletableFuture<String> result = pipeline.sendAsync(new Ping()).toCompletableFuture();
+
+    // then
+    assertThat(result).isNotDone();
+    assertThat(invokedMiddlewareIds).containsExactly("async");
+  }
+
+  @Test
+  void returnsExpiredDeadlinesAsExceptionallyCompletedStages() throws Exception {
+    // given
+    Pipeline pipeline = new Pipelinr().with(() -> Stream.of(new Pong()));
+    Deadline deadline = Deadline.after(Duration.ofNanos(1));
+    Thread.sleep(1);
+
+    // when
+    CompletionStage<String> result = deadline.attach(() -> pipeline.sendAsync(new Ping()));
+
+    // then
+    Throwable e = assertThrows(ExecutionException.class, result.toCompletableFuture()::get);
+    assertThat(e).hasCauseExactlyInstanceOf(DeadlineExceededException.class);
+  }
+
+  @Test
+  void returnsFailuresAsExceptionallyCompletedStages() {
+    // given
+    Pipeline pipeline = new Pipelinr();
+
+    // when
+    CompletableFuture<String> result = pipeline.sendAsync(new Ping()).toCompletableFuture();
+
+    // then
+    Throwable e = assertThrows(ExecutionException.class, result::get);
+    assertThat(e).hasCauseExactlyInstanceOf(CommandHandlerNotFoundException.class);
+  }
+
+  static class Ping implements Command<String> {}
+
+  static class Pong implements Command.Handler<Ping, String> {
+    @Override
+    public String handle(Ping command) {
+      return "Pong";
+    }
+  }
+
+  static class AsyncPong implements Command.AsyncHandler<Ping, String> {
+
+    private final CompletionStage<String> pong;
+
+    AsyncPong(CompletionStage<String> pong) {
+      this.pong = pong;
+    }
+
+    @Override
+    public CompletionStage<String> handleAsync(Ping command) {
+      return pong;
+    }
+  }
+}
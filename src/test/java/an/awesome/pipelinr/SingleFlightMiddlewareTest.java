@@ -0,0 +1,268 @@
+package an.awesome.pipelinr;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class SingleFlightMiddlewareTest {
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(8);
+  private final CountDownLatch release = new CountDownLatch(1);
+  private final AtomicInteger handled = new AtomicInteger();
+  private final SingleFlightMiddleware singleFlight = new SingleFlightMiddleware();
+  private final Pipeline pipeline =
+      new Pipelinr()
+          .with(() -> Stream.of(new GetPriceHandler(), new BuyStockHandler()))
+          .with(() -> Stream.of(singleFlight));
+
+  @AfterEach
+  void tearDown() {
+    release.countDown();
+    executor.shutdownNow();
+  }
+
+  @Test
+  void sharesResultOfConcurrentEqualCommands() throws Exception {
+    // given
+    List<Future<String>> prices = new ArrayList<>();
+
+    // when
+    for (int i = 0; i < 8; i++) {
+      prices.add(executor.submit(() -> new GetPrice("ACME").execute(pipeline)));
+    }
+    awaitShared(7);
+    release.countDown();
+
+    // then
+    for (Future<String> price : prices) {
+      assertThat(price.get(5, SECONDS)).isEqualTo("ACME 1");
+    }
+    assertThat(handled).hasValue(1);
+  }
+
+  @Test
+  void sharesExceptionOfConcurrentEqualCommands() throws Exception {
+    // given
+    Future<String> leader = executor.submit(() -> new GetPrice("FAIL").execute(pipeline));
+    Future<String> follower = executor.submit(() -> new GetPrice("FAIL").execute(pipeline));
+    awaitShared(1);
+
+    // when
+    release.countDown();
+
+    // then
+    Throwable leaderException = assertThrows(Exception.class, () -> leader.get(5, SECONDS));
+    Throwable followerException = assertThrows(Exception.class, () -> follower.get(5, SECONDS));
+    assertThat(followerException.getCause()).isSameAs(leaderException.getCause());
+    assertThat(handled).hasValue(1);
+  }
+
+  @Test
+  void followersWaitNoLongerThanTheirDeadline() throws Exception {
+    // given
+    Future<String> leader = executor.submit(() -> new GetPrice("ACME").execute(pipeline));
+    awaitHandled(1);
+
+    // when
+    assertThrows(
+        DeadlineExceededException.class,
+        () -> pipeline.send(new GetPrice("ACME"), Deadline.after(Duration.ofMillis(10))));
+    release.countDown();
+
+    // then
+    assertThat(leader.get(5, SECONDS)).isEqualTo("ACME 1");
+    assertThat(singleFlight.shared()).isEqualTo(1);
+  }
+
+  @Test
+  void runsDifferentCommandsIndependently() {
+    // given
+    release.countDown();
+
+    // when
+    new GetPrice("ACME").execute(pipeline);
+    new GetPrice("INITECH").execute(pipeline);
+    new GetPrice("ACME").execute(pipeline);
+
+    // then
+    assertThat(handled).hasValue(3);
+    assertThat(singleFlight.shared()).isZero();
+  }
+
+  @Test
+  void doesNotDeduplicateCommandsThatDoNotOptIn() throws Exception {
+    // given
+    List<Future<String>> purchases = new ArrayList<>();
+
+    // when
+    for (int i = 0; i < 2; i++) {
+      purchases.add(executor.submit(() -> new BuyStock("ACME").execute(pipeline)));
+    }
+    release.countDown();
+
+    // then
+    for (Future<String> purchase : purchases) {
+      purchase.get(5, SECONDS);
+    }
+    assertThat(handled).hasValue(2);
+  }
+
+  @Test
+  void sharesCheckedExceptionsThrownSneakily() throws Exception {
+    // given
+    CountDownLatch handling = new CountDownLatch(1);
+    class SneakyHandler implements Command.Handler<GetPrice, String> {
+      @Override
+      public String handle(GetPrice command) {
+        handling.countDown();
+        await();
+        return sneakyThrow(new IOException("No connection"));
+      }
+    }
+    Pipeline pipeline =
+        new Pipelinr()
+            .with(() -> Stream.of(new SneakyHandler()))
+            .with(() -> Stream.of(singleFlight));
+    Future<String> leader = executor.submit(() -> new GetPrice("ACME").execute(pipeline));
+    assertThat(handling.await(5, SECONDS)).isTrue();
+    Future<String> follower = executor.submit(() -> new GetPrice("ACME").execute(pipeline));
+    awaitShared(1);
+
+    // when
+    release.countDown();
+
+    // then
+    Throwable leaderException = assertThrows(Exception.class, () -> leader.get(5, SECONDS));
+    Throwable followerException = assertThrows(Exception.class, () -> follower.get(5, SECONDS));
+    assertThat(leaderException).hasCauseInstanceOf(IOException.class);
+    assertThat(followerException).hasCauseInstanceOf(CompletionException.class);
+    assertThat(followerException.getCause()).hasCause(leaderException.getCause());
+  }
+
+  @Test
+  void throwsIfEqualCommandIsSentFromItsOwnHandler() {
+    // given
+    class RecursiveHandler implements Command.Handler<GetPrice, String> {
+      private Pipeline pipeline;
+
+      @Override
+      public String handle(GetPrice command) {
+        return new GetPrice(command.symbol).execute(pipeline);
+      }
+    }
+    RecursiveHandler handler = new RecursiveHandler();
+    handler.pipeline =
+        new Pipelinr().with(() -> Stream.of(handler)).with(() -> Stream.of(singleFlight));
+
+    // when
+    Throwable e =
+        assertThrows(
+            IllegalStateException.class, () -> new GetPrice("ACME").execute(handler.pipeline));
+
+    // then
+    assertThat(e).hasMessageContaining("is sent while an equal command is handled");
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <R, E extends Throwable> R sneakyThrow(Throwable e) throws E {
+    throw (E) e;
+  }
+
+  private void awaitHandled(int count) throws InterruptedException {
+    long deadline = System.nanoTime() + SECONDS.toNanos(5);
+    while (handled.get() < count) {
+      assertThat(System.nanoTime() - deadline).isNegative();
+      Thread.sleep(1);
+    }
+  }
+
+  private void awaitShared(long shared) throws InterruptedException {
+    long deadline = System.nanoTime() + SECONDS.toNanos(5);
+    while (singleFlight.shared() < shared) {
+      assertThat(System.nanoTime() - deadline).isNegative();
+      Thread.sleep(1);
+    }
+  }
+
+  static class GetPrice implements Command<String>, SingleFlightMiddleware.Deduplicated {
+
+    private final String symbol;
+
+    GetPrice(String symbol) {
+      this.symbol = symbol;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof GetPrice && ((GetPrice) o).symbol.equals(symbol);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(symbol);
+    }
+  }
+
+  static class BuyStock implements Command<String> {
+
+    private final String symbol;
+
+    BuyStock(String symbol) {
+      this.symbol = symbol;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof BuyStock && ((BuyStock) o).symbol.equals(symbol);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(symbol);
+    }
+  }
+
+  class GetPriceHandler implements Command.Handler<GetPrice, String> {
+    @Override
+    public String handle(GetPrice command) {
+      int count = handled.incrementAndGet();
+      await();
+      if (command.symbol.equals("FAIL")) {
+        throw new IllegalStateException("No price");
+      }
+      return command.symbol + " " + count;
+    }
+  }
+
+  class BuyStockHandler implements Command.Handler<BuyStock, String> {
+    @Override
+    public String handle(BuyStock command) {
+      handled.incrementAndGet();
+      await();
+      return "Bought " + command.symbol;
+    }
+  }
+
+  private void await() {
+    try {
+      release.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,284 @@
+package an.awesome.pipelinr;
+
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+class StreamCommandTest {
+
+  private final AtomicInteger produced = new AtomicInteger();
+  private final AtomicBoolean closed = new AtomicBoolean();
+  private final AtomicInteger closes = new AtomicInteger();
+  private final AtomicInteger observed = new AtomicInteger();
+
+  @Test
+  void producesResultsLazilyAndClosesResources() {
+    // given
+    Pipeline pipeline = pipeline();
+    List<String> exported = new ArrayList<>();
+
+    // when
+    try (Stream<String> orders = new ExportOrders(1_000_000).execute(pipeline)) {
+      assertThat(produced).hasValue(0);
+      orders.limit(3).forEach(exported::add);
+    }
+
+    // then
+    assertThat(exported).containsExactly("Order 0", "Order 1", "Order 2");
+    assertThat(produced).hasValue(3);
+    assertThat(closed).isTrue();
+  }
+
+  @Test
+  void runsItemMiddlewaresForEachResultAsItIsConsumed() {
+    // given
+    StreamCommand.ItemMiddleware counting =
+        new StreamCommand.ItemMiddleware() {
+          @Override
+          public <T, C extends StreamCommand<T>> T invoke(C command, T result) {
+            observed.incrementAndGet();
+            return result;
+          }
+        };
+    StreamCommand.ItemMiddleware masking =
+        new StreamCommand.ItemMiddleware() {
+          @Override
+          @SuppressWarnings("unchecked")
+          public <T, C extends StreamCommand<T>> T invoke(C command, T result) {
+            return (T) ((String) result).replaceAll("[0-9]", "*");
+          }
+        };
+    Pipeline pipeline =
+        pipeline(
+            StreamCommand.ItemMiddleware.perItem(counting),
+            StreamCommand.ItemMiddleware.perItem(masking));
+
+    // when
+    Stream<String> orders = new ExportOrders(3).execute(pipeline);
+    int observedBeforeConsuming = observed.get();
+    List<String> exported = orders.collect(toList());
+    orders.close();
+
+    // then
+    assertThat(observedBeforeConsuming).isZero();
+    assertThat(exported).containsExactly("Order *", "Order *", "Order *");
+    assertThat(observed).hasValue(3);
+    assertThat(closed).isTrue();
+  }
+
+  @Test
+  void leavesOtherCommandsToOtherMiddlewares() {
+    // given
+    Pipeline pipeline =
+        pipeline(
+            StreamCommand.ItemMiddleware.perItem(
+                new StreamCommand.ItemMiddleware() {
+                  @Override
+                  public <T, C extends StreamCommand<T>> T invoke(C command, T result) {
+                    observed.incrementAndGet();
+                    return result;
+                  }
+                }));
+
+    // when
+    Integer count = new CountOrders().execute(pipeline);
+
+    // then
+    assertThat(count).isEqualTo(42);
+    assertThat(observed).hasValue(0);
+  }
+
+  @Test
+  void closesResourcesWhenConsumerFails() {
+    // given
+    Pipeline pipeline = pipeline();
+
+    // when
+    Throwable e =
+        assertThrows(
+            IllegalStateException.class,
+            () ->
+                new ExportOrders(10)
+                    .forEach(
+                        pipeline,
+                        order -> {
+                          if (order.equals("Order 5")) {
+                            throw new IllegalStateException("Disk is full");
+                          }
+                        }));
+
+    // then
+    assertThat(e).hasMessage("Disk is full");
+    assertThat(produced).hasValue(6);
+    assertThat(closed).isTrue();
+  }
+
+  @Test
+  void closesResourcesWhenMiddlewareFailsAfterHandler() {
+    // given
+    Pipeline pipeline =
+        pipeline(
+            new Command.Middleware() {
+              @Override
+              public <R, C extends Command<R>> R invoke(C command, Next<R> next) {
+                next.invoke();
+                throw new IllegalStateException("Audit log is down");
+              }
+            });
+
+    // when
+    Throwable e =
+        assertThrows(IllegalStateException.class, () -> new ExportOrders(10).execute(pipeline));
+
+    // then
+    assertThat(e).hasMessage("Audit log is down");
+    assertThat(produced).hasValue(0);
+    assertThat(closed).isTrue();
+  }
+
+  @Test
+  void doesNotCloseStreamOfSuccessfulSend() {
+    // given
+    Pipeline pipeline = pipeline();
+
+    // when
+    Stream<String> orders = new ExportOrders(3).execute(pipeline);
+
+    // then
+    assertThat(closed).isFalse();
+    orders.close();
+    assertThat(closed).isTrue();
+  }
+
+  @Test
+  void closesStreamsOfBatchWhenMiddlewareFailsAfterHandler() {
+    // given
+    Pipeline pipeline =
+        pipeline(
+            new Command.Middleware() {
+              @Override
+              public <R, C extends Command<R>> R invoke(C command, Next<R> next) {
+                R result = next.invoke();
+                if (((ExportOrders) command).count == 2) {
+                  throw new IllegalStateException("Audit log is down");
+                }
+                return result;
+              }
+            });
+
+    // when
+    Throwable e =
+        assertThrows(
+            IllegalStateException.class,
+            () -> pipeline.sendAll(Arrays.asList(new ExportOrders(1), new ExportOrders(2))));
+
+    // then
+    assertThat(e).hasMessage("Audit log is down");
+    assertThat(closes).hasValue(2);
+  }
+
+  @Test
+  void closesStreamWhenAsyncMiddlewareFailsAfterHandler() {
+    // given
+    Pipeline pipeline =
+        new Pipelinr()
+            .with(() -> Stream.of(new ExportOrdersHandler()))
+            .with(
+                () ->
+                    Stream.of(
+                        new Command.AsyncMiddleware() {
+                          @Override
+                          public <R, C extends Command<R>> CompletionStage<R> invoke(
+                              C command, Next<R> next) {
+                            return next.invoke()
+                                .thenApply(
+                                    it -> {
+                                      throw new IllegalStateException("Audit log is down");
+                                    });
+                          }
+                        }));
+
+    // when
+    CompletableFuture<Stream<String>> result =
+        pipeline.sendAsync(new ExportOrders(10)).toCompletableFuture();
+
+    // then
+    Throwable e = assertThrows(ExecutionException.class, result::get);
+    assertThat(e.getCause()).hasMessage("Audit log is down");
+    assertThat(produced).hasValue(0);
+    assertThat(closed).isTrue();
+  }
+
+  @Test
+  void doesNotCloseStreamsOfSuccessfulSendAll() {
+    // given
+    Pipeline pipeline = pipeline();
+
+    // when
+    List<Stream<String>> orders =
+        pipeline.sendAll(Arrays.asList(new ExportOrders(1), new ExportOrders(2)));
+
+    // then
+    assertThat(orders).hasSize(2);
+    assertThat(closes).hasValue(0);
+  }
+
+  private Pipeline pipeline(Command.Middleware... middlewares) {
+    return new Pipelinr()
+        .with(() -> Stream.of(new ExportOrdersHandler(), new CountOrdersHandler()))
+        .with(() -> Stream.of(middlewares));
+  }
+
+  static class ExportOrders implements StreamCommand<String> {
+    final int count;
+
+    ExportOrders(int count) {
+      this.count = count;
+    }
+  }
+
+  static class CountOrders implements Command<Integer> {}
+
+  class ExportOrdersHandler implements Command.Handler<ExportOrders, Stream<String>> {
+    @Override
+    public Stream<String> handle(ExportOrders command) {
+      Iterator<String> cursor =
+          new Iterator<String>() {
+            @Override
+            public boolean hasNext() {
+              return produced.get() < command.count;
+            }
+
+            @Override
+            public String next() {
+              return "Order " + produced.getAndIncrement();
+            }
+          };
+      return StreamCommand.lazy(
+          cursor,
+          () -> {
+            closed.set(true);
+            closes.incrementAndGet();
+          });
+    }
+  }
+
+  static class CountOrdersHandler implements Command.Handler<CountOrders, Integer> {
+    @Override
+    public Integer handle(CountOrders command) {
+      return 42;
+    }
+  }
+}